@@ -0,0 +1,58 @@
+package com.github.mesabloo.diagnose4j.benchmarks;
+
+import com.github.mesabloo.diagnose4j.Diagnostic;
+import com.github.mesabloo.diagnose4j.instances.StringPretty;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the whole pipeline (layout and printing) for a diagnostic containing many reports.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DiagnosticBenchmark {
+    @Param({"100"})
+    public int reports;
+
+    @Param({"1", "16"})
+    public int markersPerLine;
+
+    @Param({"0", "200"})
+    public int multilineSpan;
+
+    @Param({"80", "400"})
+    public int lineLength;
+
+    @Param({"1", "8"})
+    public int fileCount;
+
+    @Param({"true", "false"})
+    public boolean unicode;
+
+    @Param({"true", "false"})
+    public boolean colors;
+
+    private Diagnostic<StringPretty> diagnostic;
+    private Fixtures.CountingOutputStream sink;
+    private PrintStream out;
+
+    @Setup
+    public void setUp() {
+        this.diagnostic = Fixtures.diagnostic(reports, markersPerLine, multilineSpan, lineLength, fileCount);
+        this.sink = new Fixtures.CountingOutputStream();
+        this.out = new PrintStream(this.sink);
+    }
+
+    @Benchmark
+    public long print() {
+        this.diagnostic.print(this.out, this.unicode, this.colors);
+        this.out.flush();
+        return this.sink.count;
+    }
+}
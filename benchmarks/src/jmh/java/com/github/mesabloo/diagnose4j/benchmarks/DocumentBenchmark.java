@@ -0,0 +1,56 @@
+package com.github.mesabloo.diagnose4j.benchmarks;
+
+import com.github.mesabloo.diagnose4j.prettyprint.Document;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the printing of an already laid out report.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DocumentBenchmark {
+    @Param({"1", "16"})
+    public int markersPerLine;
+
+    @Param({"0", "200"})
+    public int multilineSpan;
+
+    @Param({"80", "400"})
+    public int lineLength;
+
+    @Param({"1", "8"})
+    public int fileCount;
+
+    @Param({"true", "false"})
+    public boolean unicode;
+
+    @Param({"true", "false"})
+    public boolean colors;
+
+    private Document document;
+    private Fixtures.CountingOutputStream sink;
+    private PrintStream out;
+
+    @Setup
+    public void setUp() {
+        this.document = Fixtures.report(markersPerLine, multilineSpan, lineLength, fileCount)
+                .pretty(Fixtures.files(fileCount, Fixtures.linesPerFile(multilineSpan), lineLength), unicode);
+
+        this.sink = new Fixtures.CountingOutputStream();
+        this.out = new PrintStream(this.sink);
+    }
+
+    @Benchmark
+    public long print() {
+        this.document.print(this.out, this.colors);
+        this.out.flush();
+        return this.sink.count;
+    }
+}
@@ -0,0 +1,130 @@
+package com.github.mesabloo.diagnose4j.benchmarks;
+
+import com.github.mesabloo.diagnose4j.Diagnostic;
+import com.github.mesabloo.diagnose4j.Position;
+import com.github.mesabloo.diagnose4j.Report;
+import com.github.mesabloo.diagnose4j.instances.StringPretty;
+import com.github.mesabloo.diagnose4j.report.Marker;
+
+import java.io.OutputStream;
+import java.util.*;
+
+/**
+ * Synthetic inputs shared by all benchmarks.
+ */
+final class Fixtures {
+    private Fixtures() {}
+
+    /**
+     * Generates the content of a source file.
+     *
+     * @param lines      The number of lines in the file
+     * @param lineLength The number of characters on each line
+     * @return The content of the file, where lines are separated by <code>"\n"</code>
+     */
+    static String source(final int lines, final int lineLength) {
+        final StringBuilder content = new StringBuilder();
+        for (int line = 1; line <= lines; ++line) {
+            for (int column = 0; column < lineLength; ++column) {
+                content.append((char) ('a' + (line + column) % 26));
+            }
+            content.append('\n');
+        }
+        return content.toString();
+    }
+
+    /**
+     * The name of the <code>n</code>-th generated file.
+     */
+    static String fileName(final int n) {
+        return "src/generated/File" + n + ".java";
+    }
+
+    /**
+     * The number of lines needed in each file so that all markers of {@link #report} fit.
+     */
+    static int linesPerFile(final int multilineSpan) {
+        return Math.max(10, multilineSpan + 4);
+    }
+
+    /**
+     * Builds a report containing, for each file:
+     * <ul>
+     *     <li><code>markersPerLine</code> inline markers spread evenly across line 2;</li>
+     *     <li>a multiline marker going from line 3 to line <code>3 + multilineSpan</code>, if <code>multilineSpan &gt; 0</code>.</li>
+     * </ul>
+     *
+     * The first marker of the first file is a {@link Marker.This}, all others are {@link Marker.Where}.
+     */
+    static Report<StringPretty> report(final int markersPerLine, final int multilineSpan, final int lineLength, final int fileCount) {
+        final LinkedHashMap<Position, Marker<StringPretty>> markers = new LinkedHashMap<>();
+        final int markerWidth = Math.max(1, lineLength / markersPerLine - 1);
+
+        for (int file = 0; file < fileCount; ++file) {
+            final String name = fileName(file);
+
+            for (int m = 0; m < markersPerLine; ++m) {
+                final int start = 1 + m * (markerWidth + 1);
+                final Position pos = new Position(2, start, 2, start + markerWidth, name);
+                final StringPretty msg = new StringPretty("marker #" + m + " of " + name);
+
+                markers.put(pos, markers.isEmpty() ? new Marker.This<>(msg) : new Marker.Where<>(msg));
+            }
+            if (multilineSpan > 0) {
+                markers.put(new Position(3, 2, 3 + multilineSpan, lineLength / 2, name),
+                        new Marker.Where<>(new StringPretty("spans " + multilineSpan + " lines")));
+            }
+        }
+
+        final List<StringPretty> hints = new ArrayList<>();
+        hints.add(new StringPretty("This is a hint which should help solving the problem."));
+
+        return new Report<>(true, new StringPretty("Benchmark report with " + markers.size() + " markers"), markers, hints);
+    }
+
+    /**
+     * Associates each generated file name to its lines, as {@link Report#pretty} expects them.
+     */
+    static Map<String, List<String>> files(final int fileCount, final int lines, final int lineLength) {
+        final Map<String, List<String>> files = new HashMap<>();
+        final String content = source(lines, lineLength);
+        for (int file = 0; file < fileCount; ++file) {
+            files.put(fileName(file), Arrays.asList(content.split("\n")));
+        }
+        return files;
+    }
+
+    /**
+     * Builds a diagnostic containing <code>reports</code> copies of {@link #report} along with all the needed files.
+     */
+    static Diagnostic<StringPretty> diagnostic(final int reports, final int markersPerLine, final int multilineSpan, final int lineLength, final int fileCount) {
+        Diagnostic<StringPretty> diag = new Diagnostic<>();
+
+        final String content = source(linesPerFile(multilineSpan), lineLength);
+        for (int file = 0; file < fileCount; ++file) {
+            diag = diag.withFile(fileName(file), content);
+        }
+        for (int i = 0; i < reports; ++i) {
+            diag = diag.withReport(report(markersPerLine, multilineSpan, lineLength, fileCount));
+        }
+
+        return diag;
+    }
+
+    /**
+     * An {@link OutputStream} discarding everything written to it, only remembering how many bytes it received.
+     */
+    static final class CountingOutputStream extends OutputStream {
+        long count = 0;
+
+        @Override
+        public void write(final int b) {
+            ++count;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) {
+            count += len;
+        }
+    }
+}
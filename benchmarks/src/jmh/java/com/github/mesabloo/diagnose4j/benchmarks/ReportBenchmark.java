@@ -0,0 +1,50 @@
+package com.github.mesabloo.diagnose4j.benchmarks;
+
+import com.github.mesabloo.diagnose4j.Report;
+import com.github.mesabloo.diagnose4j.instances.StringPretty;
+import com.github.mesabloo.diagnose4j.prettyprint.Document;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the layout of a single report into a {@link Document}, without printing it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReportBenchmark {
+    @Param({"1", "16"})
+    public int markersPerLine;
+
+    @Param({"0", "200"})
+    public int multilineSpan;
+
+    @Param({"80", "400"})
+    public int lineLength;
+
+    @Param({"1", "8"})
+    public int fileCount;
+
+    @Param({"true", "false"})
+    public boolean unicode;
+
+    private Report<StringPretty> report;
+    private Map<String, List<String>> files;
+
+    @Setup
+    public void setUp() {
+        this.report = Fixtures.report(markersPerLine, multilineSpan, lineLength, fileCount);
+        this.files = Fixtures.files(fileCount, Fixtures.linesPerFile(multilineSpan), lineLength);
+    }
+
+    @Benchmark
+    public Document pretty() {
+        return this.report.pretty(this.files, this.unicode);
+    }
+}
@@ -0,0 +1,365 @@
+package com.github.mesabloo.diagnose4j;
+
+import com.github.mesabloo.diagnose4j.report.Marker;
+import com.github.mesabloo.diagnose4j.source.SourceFile;
+import com.github.mesabloo.diagnose4j.source.SourceProvider;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * A compact binary encoding of diagnostics, meant to be sent from a process producing reports to another one printing them.
+ *
+ * An encoded diagnostic is laid out as follows, where all integers are unsigned LEB128 variable-length integers
+ * (and lines and columns are encoded as the 32 bits of their value):
+ * <pre><code>
+ * magic       "D4JB"
+ * version     1
+ * strings     count, then for each string: its length in bytes, followed by its UTF-8 bytes
+ * reports     count, then for each report:
+ *                 flags (1 = error), message,
+ *                 marker count, then for each marker: kind (0 = This, 1 = Where, 2 = Maybe), file, beginning line,
+ *                     beginning column, ending line, ending column, message
+ *                 hint count, then each hint
+ * files       count, then for each file: name, line count,
+ *                 then for each line: the difference with the number of the previous line,
+ *                     its length in bytes, followed by its UTF-8 bytes
+ * </code></pre>
+ * Messages, hints and file names are indices into the string table, so that each of them is only stored once.
+ * Messages are stored as plain text, as they were rendered without colors.
+ * Only the lines needed to render the reports are stored.
+ */
+final class BinaryFormat {
+    private static final byte[] MAGIC = {'D', '4', 'J', 'B'};
+    private static final int VERSION = 1;
+
+    private static final int THIS = 0;
+    private static final int WHERE = 1;
+    private static final int MAYBE = 2;
+
+    private BinaryFormat() {}
+
+    /**
+     * Encodes reports, along with the lines of code they reference.
+     *
+     * @param resolver     Converts positions given as offsets to lines and columns
+     * @param sources      Where to fetch the lines referenced by the reports
+     * @param contextLines The number of lines to store before and after each marked line
+     */
+    static <Msg extends Pretty<Msg>> ByteBuffer encode(
+            final List<Report<Msg>> reports,
+            final Function<Report<Msg>, Report<Msg>> resolver,
+            final SourceProvider sources,
+            final int contextLines
+    ) {
+        final Output strings = new Output();
+        final Map<String, Integer> stringIds = new HashMap<>();
+        final StringBuilder scratch = new StringBuilder();
+        final Function<String, Integer> intern = s -> stringIds.computeIfAbsent(s, k -> {
+            strings.string(k);
+            return stringIds.size();
+        });
+        final Function<Pretty<?>, Integer> message = msg -> {
+            scratch.setLength(0);
+            msg.pretty().render(scratch, false);
+            return intern.apply(scratch.toString());
+        };
+
+        final Output body = new Output();
+        final Map<String, BitSet> lines = new LinkedHashMap<>();
+
+        body.varint(reports.size());
+        for (final Report<Msg> unresolved : reports) {
+            final Report<Msg> report = resolver.apply(unresolved);
+            body.varint(report.isError() ? 1 : 0);
+            body.varint(message.apply(report.message()));
+
+            final MarkerTable<Msg> markers = report.markers();
+            body.varint(markers.size());
+            for (int i = 0; i < markers.size(); ++i) {
+                final Position pos = markers.position(i);
+                final Marker<Msg> marker = markers.marker(i);
+                final String file = pos.file();
+
+                body.varint(marker instanceof Marker.This ? THIS : marker instanceof Marker.Where ? WHERE : MAYBE);
+                body.varint(intern.apply(file));
+                body.varint(pos.beginning_line);
+                body.varint(pos.beginning_column);
+                body.varint(pos.ending_line);
+                body.varint(pos.ending_column);
+                body.varint(message.apply(marker.getMessage()));
+
+                final int first = Math.max(1, pos.beginning_line - contextLines);
+                final int last = (int) Math.min(Integer.MAX_VALUE - 1, (long) Math.max(pos.beginning_line, pos.ending_line) + contextLines);
+                if (first <= last)
+                    lines.computeIfAbsent(file, k -> new BitSet()).set(first, last + 1);
+            }
+
+            body.varint(report.hints().size());
+            for (final Msg hint : report.hints()) {
+                body.varint(message.apply(hint));
+            }
+        }
+
+        body.varint(lines.size());
+        final Output fileLines = new Output();
+        for (final Map.Entry<String, BitSet> file : lines.entrySet()) {
+            body.varint(intern.apply(file.getKey()));
+
+            fileLines.clear();
+            int count = 0;
+            int previous = 0;
+            final BitSet wanted = file.getValue();
+            for (int n = wanted.nextSetBit(1); n >= 0; n = wanted.nextSetBit(n + 1)) {
+                final Optional<String> line = sources.line(file.getKey(), n);
+                if (!line.isPresent())
+                    continue;
+                fileLines.varint(n - previous);
+                fileLines.string(line.get());
+                previous = n;
+                ++count;
+            }
+            body.varint(count);
+            body.append(fileLines);
+        }
+
+        final Output header = new Output();
+        header.bytes(MAGIC, MAGIC.length);
+        header.varint(VERSION);
+        header.varint(stringIds.size());
+
+        final ByteBuffer result = ByteBuffer.allocate(header.size + strings.size + body.size);
+        result.put(header.buf, 0, header.size)
+                .put(strings.buf, 0, strings.size)
+                .put(body.buf, 0, body.size);
+        result.flip();
+        return result;
+    }
+
+    /**
+     * Decodes reports, and the lines of code stored with them.
+     *
+     * Strings are decoded directly from the buffer without copying it, and lines of code are only decoded
+     * when they are rendered.
+     * The buffer must therefore not be modified as long as the returned diagnostic is in use.
+     *
+     * @param bytes    The encoded diagnostic, from its position to its limit. Its position is not modified.
+     * @param messages Converts plain text back to messages
+     * @throws IllegalArgumentException if the buffer does not contain a diagnostic in a supported version
+     */
+    @SuppressWarnings("unchecked")
+    static <Msg extends Pretty<Msg>> Diagnostic<Msg> decode(final ByteBuffer bytes, final Function<String, Msg> messages) {
+        final Input in = new Input(bytes.duplicate());
+        try {
+            for (final byte b : MAGIC) {
+                if (in.buffer.get() != b)
+                    throw new IllegalArgumentException("Not an encoded diagnostic");
+            }
+            final int version = in.varint();
+            if (version != VERSION)
+                throw new IllegalArgumentException("Unsupported diagnostic encoding version " + version);
+
+            final String[] strings = new String[in.count()];
+            for (int i = 0; i < strings.length; ++i) {
+                strings[i] = in.string();
+            }
+            final Object[] msgs = new Object[strings.length];
+            // each message is converted only once, however many times it is used
+
+            final Diagnostic<Msg> diagnostic = new Diagnostic<>();
+            final int reports = in.count();
+            for (int r = 0; r < reports; ++r) {
+                final boolean isError = (in.varint() & 1) != 0;
+                final Msg message = message(in.index(strings), strings, msgs, messages);
+
+                final int size = in.count();
+                final Position[] positions = new Position[size];
+                final Marker<Msg>[] markers = (Marker<Msg>[]) new Marker<?>[size];
+                for (int i = 0; i < size; ++i) {
+                    final int kind = in.varint();
+                    final int file = in.index(strings);
+                    positions[i] = new Position(in.varint(), in.varint(), in.varint(), in.varint(), strings[file], false);
+                    // all positions in the same file share the same string, so comparing them is cheap
+                    final Msg explanation = message(in.index(strings), strings, msgs, messages);
+                    switch (kind) {
+                        case THIS: markers[i] = new Marker.This<>(explanation); break;
+                        case WHERE: markers[i] = new Marker.Where<>(explanation); break;
+                        case MAYBE: markers[i] = new Marker.Maybe<>(explanation); break;
+                        default: throw new IllegalArgumentException("Unknown marker kind " + kind);
+                    }
+                }
+
+                final int hintCount = in.count();
+                final List<Msg> hints = new ArrayList<>(hintCount);
+                for (int i = 0; i < hintCount; ++i) {
+                    hints.add(message(in.index(strings), strings, msgs, messages));
+                }
+
+                diagnostic.withReport(new Report<>(isError, message, new MarkerTable<>(positions, markers, size), hints));
+            }
+
+            final int files = in.count();
+            for (int f = 0; f < files; ++f) {
+                final String name = strings[in.index(strings)];
+                final int count = in.count();
+                final int[] numbers = new int[count];
+                final int[] offsets = new int[count];
+                final int[] lengths = new int[count];
+                int previous = 0;
+                for (int i = 0; i < count; ++i) {
+                    previous += in.varint();
+                    numbers[i] = previous;
+                    lengths[i] = in.count();
+                    offsets[i] = in.buffer.position();
+                    in.skip(lengths[i]);
+                }
+                diagnostic.withFile(name, new EncodedLines(in.buffer, numbers, offsets, lengths));
+            }
+            return diagnostic;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Truncated or corrupted diagnostic", e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <Msg> Msg message(final int index, final String[] strings, final Object[] cache, final Function<String, Msg> messages) {
+        Object msg = cache[index];
+        if (msg == null) {
+            msg = messages.apply(strings[index]);
+            cache[index] = msg;
+        }
+        return (Msg) msg;
+    }
+
+    private static String decode(final ByteBuffer buffer, final int offset, final int length) {
+        if (buffer.hasArray())
+            return new String(buffer.array(), buffer.arrayOffset() + offset, length, StandardCharsets.UTF_8);
+
+        final ByteBuffer slice = buffer.duplicate();
+        slice.limit(offset + length).position(offset);
+        return StandardCharsets.UTF_8.decode(slice).toString();
+    }
+
+    /**
+     * The lines of a file stored along with an encoded diagnostic, decoded from the buffer only when requested.
+     */
+    private static final class EncodedLines implements SourceFile {
+        private final ByteBuffer buffer;
+        private final int[] numbers;
+        private final int[] offsets;
+        private final int[] lengths;
+
+        EncodedLines(final ByteBuffer buffer, final int[] numbers, final int[] offsets, final int[] lengths) {
+            this.buffer = buffer;
+            this.numbers = numbers;
+            this.offsets = offsets;
+            this.lengths = lengths;
+        }
+
+        @Override
+        public Optional<String> line(final long line) {
+            if (line < 1 || line > Integer.MAX_VALUE)
+                return Optional.empty();
+
+            final int i = Arrays.binarySearch(this.numbers, (int) line);
+            if (i < 0)
+                return Optional.empty();
+            return Optional.of(BinaryFormat.decode(this.buffer, this.offsets[i], this.lengths[i]));
+        }
+    }
+
+    /**
+     * Reads variable-length integers and strings from a buffer, using relative reads.
+     */
+    private static final class Input {
+        final ByteBuffer buffer;
+
+        Input(final ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        int varint() {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                final byte b = this.buffer.get();
+                value |= (b & 0x7F) << shift;
+                if (b >= 0)
+                    return value;
+            }
+            throw new IllegalArgumentException("Malformed variable-length integer");
+        }
+
+        /**
+         * Reads a number of items or bytes, which cannot be larger than the rest of the buffer.
+         */
+        int count() {
+            final int count = this.varint();
+            if (count < 0 || count > this.buffer.remaining())
+                throw new IllegalArgumentException("Truncated or corrupted diagnostic");
+            return count;
+        }
+
+        int index(final String[] strings) {
+            final int index = this.varint();
+            if (index < 0 || index >= strings.length)
+                throw new IllegalArgumentException("Unknown string " + index);
+            return index;
+        }
+
+        String string() {
+            final int length = this.count();
+            final String s = BinaryFormat.decode(this.buffer, this.buffer.position(), length);
+            this.skip(length);
+            return s;
+        }
+
+        void skip(final int length) {
+            this.buffer.position(this.buffer.position() + length);
+        }
+    }
+
+    /**
+     * A growable array of bytes.
+     */
+    private static final class Output {
+        byte[] buf = new byte[256];
+        int size = 0;
+
+        private void ensure(final int extra) {
+            if (this.size + extra > this.buf.length)
+                this.buf = Arrays.copyOf(this.buf, Math.max(2 * this.buf.length, this.size + extra));
+        }
+
+        void varint(int value) {
+            this.ensure(5);
+            while ((value & ~0x7F) != 0) {
+                this.buf[this.size++] = (byte) (value & 0x7F | 0x80);
+                value >>>= 7;
+            }
+            this.buf[this.size++] = (byte) value;
+        }
+
+        void bytes(final byte[] bytes, final int length) {
+            this.ensure(length);
+            System.arraycopy(bytes, 0, this.buf, this.size, length);
+            this.size += length;
+        }
+
+        void string(final String s) {
+            final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            this.varint(bytes.length);
+            this.bytes(bytes, bytes.length);
+        }
+
+        void append(final Output other) {
+            this.bytes(other.buf, other.size);
+        }
+
+        void clear() {
+            this.size = 0;
+        }
+    }
+}
@@ -2,14 +2,39 @@ package com.github.mesabloo.diagnose4j;
 
 import com.github.mesabloo.diagnose4j.prettyprint.Doc;
 import com.github.mesabloo.diagnose4j.prettyprint.Document;
-import com.github.tomaslanger.chalk.Chalk;
+import com.github.mesabloo.diagnose4j.source.EditableSourceFile;
+import com.github.mesabloo.diagnose4j.source.LineIndex;
+import com.github.mesabloo.diagnose4j.source.MappedSourceFile;
+import com.github.mesabloo.diagnose4j.source.SourceFile;
+import com.github.mesabloo.diagnose4j.source.SourceProvider;
+import com.github.mesabloo.diagnose4j.source.StringSourceFile;
 
 import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 public class Diagnostic<Msg extends Pretty<Msg>> {
     private final List<Report<Msg>> reports;
-    private final Map<String, List<String>> files;
+    private final Map<String, SourceFile> files;
+    private final List<SourceProvider> providers;
+    /**
+     * Changes every time source providers are added or removed, so that line indices of their files are computed again.
+     */
+    private long providersVersion;
+    /**
+     * The last line index computed for each file, used for as long as the file does not change.
+     */
+    private final Map<String, IndexedFile> indices;
+    private RenderCache cache;
+    private ReportLimits limits;
+    private ReportOrder order;
 
     /**
      * Creates an empty diagnostic with no reports and no files attached to it.
@@ -17,6 +42,12 @@ public class Diagnostic<Msg extends Pretty<Msg>> {
     public Diagnostic() {
         this.reports = new ArrayList<>();
         this.files = new HashMap<>();
+        this.providers = new ArrayList<>();
+        this.providersVersion = 0;
+        this.indices = new ConcurrentHashMap<>();
+        this.cache = null;
+        this.limits = ReportLimits.none();
+        this.order = ReportOrder.INSERTION;
     }
 
     /**
@@ -39,12 +70,121 @@ public class Diagnostic<Msg extends Pretty<Msg>> {
      * @return The current diagnostic, modified to include the new file.
      */
     public Diagnostic<Msg> withFile(final String filepath, final String content) {
-        this.files.put(filepath, Arrays.asList(content.split("\n")));
+        return this.withFile(filepath, new StringSourceFile(content));
+    }
+
+    /**
+     * Specifies that a file on disk can be used inside reports.
+     *
+     * The file is only mapped into memory when a report referencing it is printed,
+     * and only the lines shown in reports are decoded.
+     *
+     * @param filepath The path of the file to add.
+     *                 This is a kind of identifier, which will be used to refer to it in the reports.
+     * @param path     The location of the UTF-8 encoded file on disk.
+     * @return The current diagnostic, modified to include the new file.
+     * @see MappedSourceFile
+     */
+    public Diagnostic<Msg> withFile(final String filepath, final Path path) {
+        return this.withFile(filepath, new MappedSourceFile(path));
+    }
+
+    /**
+     * Specifies that a new file can be used inside reports.
+     *
+     * @param filepath The path of the file to add.
+     *                 This is a kind of identifier, which will be used to refer to it in the reports.
+     * @param file     The content of the file, which is only accessed when a report referencing it is printed.
+     * @return The current diagnostic, modified to include the new file.
+     */
+    public Diagnostic<Msg> withFile(final String filepath, final SourceFile file) {
+        this.files.put(filepath, file);
+        return this;
+    }
+
+    /**
+     * Replaces a range of text inside a file added with {@link #withFile}, without having to give its whole content again.
+     *
+     * The first edit of a file copies it into an {@link EditableSourceFile}, and later edits only update the lines they touch.
+     *
+     * @param filepath    The path of the file to edit, as given to {@link #withFile}.
+     * @param replacement The text to put between the start (included) and end (excluded) positions.
+     * @return The current diagnostic, modified to use the new content of the file.
+     * @throws IllegalArgumentException if the file is unknown, or if the range is not in the file
+     * @see EditableSourceFile#edit(long, long, long, long, String)
+     */
+    public Diagnostic<Msg> editFile(final String filepath, final long startLine, final long startColumn, final long endLine, final long endColumn, final String replacement) {
+        final SourceFile file = this.files.get(filepath);
+        if (file == null)
+            throw new IllegalArgumentException("Cannot edit unknown file " + filepath);
+
+        final EditableSourceFile editable = file instanceof EditableSourceFile
+                ? (EditableSourceFile) file
+                : EditableSourceFile.copyOf(file);
+        editable.edit(startLine, startColumn, endLine, endColumn, replacement);
+        // only register the copy once it is known that the edit succeeded
+        this.files.put(filepath, editable);
+        return this;
+    }
+
+    /**
+     * Adds a fallback to fetch the content of files which were not added with {@link #withFile}.
+     *
+     * Providers are tried in the order they were added, until one of them returns the requested line.
+     * They are only called for lines shown in the reports being printed.
+     *
+     * @param provider The new source provider.
+     * @return The current diagnostic, modified to include the new provider.
+     */
+    public Diagnostic<Msg> withSourceProvider(final SourceProvider provider) {
+        this.providers.add(provider);
+        ++this.providersVersion;
+        return this;
+    }
+
+    /**
+     * Reuses previous renderings of reports whose files have not changed since then.
+     *
+     * @param cache Where to keep rendered reports, or <code>null</code> to render reports every time they are printed.
+     * @return The current diagnostic, modified to use the given cache.
+     * @see RenderCache
+     */
+    public Diagnostic<Msg> withRenderCache(final RenderCache cache) {
+        this.cache = cache;
+        return this;
+    }
+
+    /**
+     * Drops duplicated reports, and reports over some limits, when printing the diagnostic.
+     * Reports are still stored in the diagnostic, and only filtered right before being rendered.
+     *
+     * @param limits Which reports to print.
+     * @return The current diagnostic, modified to print reports under the given limits.
+     * @see ReportLimits
+     */
+    public Diagnostic<Msg> withLimits(final ReportLimits limits) {
+        this.limits = limits;
+        return this;
+    }
+
+    /**
+     * Changes the order in which reports are printed.
+     * Reports are still stored in insertion order, and only sorted right before being printed.
+     *
+     * @param order How to order reports.
+     * @return The current diagnostic, modified to print reports in the given order.
+     * @see ReportOrder
+     */
+    public Diagnostic<Msg> withReportOrder(final ReportOrder order) {
+        this.order = order;
         return this;
     }
 
     public void clear() {
         this.files.clear();
+        this.providers.clear();
+        ++this.providersVersion;
+        this.indices.clear();
         this.reports.clear();
     }
 
@@ -68,18 +208,348 @@ public class Diagnostic<Msg extends Pretty<Msg>> {
      *                    (Disable if printing to a stream other than {@link System#out} and {@link System#err})
      */
     public void print(PrintStream handle, final boolean withUnicode, final boolean withColors) {
+        this.print(handle, RenderOptions.defaults().withUnicode(withUnicode).withColors(withColors));
+    }
+
+    /**
+     * Print the diagnostic onto the given stream.
+     *
+     * Printing does not modify the diagnostic nor any global state,
+     * so different diagnostics may be printed concurrently with different options.
+     *
+     * @param handle  The handle of a {@link PrintStream} onto which to print the diagnostic.
+     * @param options How to render the reports.
+     * @see Diagnostic#print(PrintStream, boolean, boolean)
+     */
+    public void print(PrintStream handle, final RenderOptions options) {
+        final ReportFilter<Msg> filter = new ReportFilter<>(this.limits);
         final Document doc = new Document();
-        for (final Report<Msg> report : reports) {
-            doc.appendDoc(report.pretty(this.files, withUnicode))
+        this.inPrintOrder().forEachOrdered(entry -> {
+            if (!filter.accept(entry.getKey()))
+                return;
+
+            doc.appendDoc(this.pretty(entry.getKey(), options, entry.getValue()))
                     .append(Doc.line());
+        });
+
+        final Document summary = filter.summary();
+        if (summary != null)
+            doc.appendDoc(summary).append(Doc.line());
+
+        doc.print(handle, options.isColored());
+    }
+
+    /**
+     * Print the diagnostic onto the given stream, rendering reports in parallel.
+     *
+     * Reports are rendered as text on the given executor, but are still printed in order.
+     * At most a few reports per available processor are rendered ahead of the one being printed,
+     * so that memory usage does not depend on the number of reports.
+     *
+     * @param executor Where to render reports, for example {@link java.util.concurrent.ForkJoinPool#commonPool()}
+     * @see Diagnostic#print(PrintStream, RenderOptions)
+     */
+    public void print(PrintStream handle, final RenderOptions options, final Executor executor) {
+        final int window = 4 * Runtime.getRuntime().availableProcessors();
+        final Deque<CompletableFuture<String>> pending = new ArrayDeque<>();
+        final ReportFilter<Msg> filter = new ReportFilter<>(this.limits);
+        final Iterator<Map.Entry<Report<Msg>, FileGroup>> remaining = this.inPrintOrder()
+                .filter(entry -> filter.accept(entry.getKey()))
+                .iterator();
+
+        while (remaining.hasNext() || !pending.isEmpty()) {
+            while (remaining.hasNext() && pending.size() < window) {
+                final Map.Entry<Report<Msg>, FileGroup> next = remaining.next();
+                pending.addLast(CompletableFuture.supplyAsync(() -> this.render(next.getKey(), options, next.getValue()), executor));
+            }
+
+            try {
+                handle.print(pending.removeFirst().join());
+            } catch (CompletionException e) {
+                pending.forEach(future -> future.cancel(false));
+                if (e.getCause() instanceof RuntimeException)
+                    throw (RuntimeException) e.getCause();
+                throw e;
+            }
         }
 
-        if (withColors) {
-            Chalk.setColorEnabled(true);
+        final Document summary = filter.summary();
+        if (summary != null)
+            summary.append(Doc.line()).print(handle, options.isColored());
+    }
+
+    /**
+     * Creates a sink printing reports onto the given stream as soon as they are inserted into it.
+     *
+     * Reports inserted into the sink are never stored in this diagnostic, and are printed in the order in which they are inserted.
+     * Files known by the diagnostic
+     * (including the ones added after the creation of the sink) are used to render them.
+     *
+     * @param handle      The stream onto which to print reports.
+     * @param withUnicode Specifies whether Unicode characters are wanted.
+     * @param withColors  Must the output be colored?
+     * @return A new sink, flushing every report to the stream right after rendering it.
+     * @see Diagnostic#streamTo(PrintStream, RenderOptions, int)
+     */
+    public DiagnosticSink<Msg> streamTo(PrintStream handle, final boolean withUnicode, final boolean withColors) {
+        return this.streamTo(handle, RenderOptions.defaults().withUnicode(withUnicode).withColors(withColors), 1);
+    }
+
+    /**
+     * Creates a sink printing reports onto the given stream as soon as they are inserted into it.
+     *
+     * @param options   How to render the reports.
+     * @param batchSize The number of rendered reports to accumulate before writing them all at once to the stream.
+     * @return A new sink.
+     * @see Diagnostic#streamTo(PrintStream, boolean, boolean)
+     */
+    public DiagnosticSink<Msg> streamTo(PrintStream handle, final RenderOptions options, final int batchSize) {
+        return new DiagnosticSink<Msg>((report, opts) -> this.pretty(report, opts, null), new ReportFilter<>(this.limits), handle, options, batchSize);
+    }
+
+    /**
+     * Creates a writer exporting reports as JSON Lines, one object per report, as soon as they are inserted into it.
+     *
+     * Positions given as offsets are converted to lines and columns using the files known by the diagnostic.
+     *
+     * @param output Where to write reports, for example a {@link java.io.BufferedWriter}.
+     * @return A new writer.
+     * @see JsonLinesWriter
+     */
+    public DiagnosticWriter<Msg> jsonLinesTo(final Appendable output) {
+        return new JsonLinesWriter<>(output, report -> report.resolve(this::lineIndex));
+    }
+
+    /**
+     * Creates a writer exporting reports as a SARIF log, as soon as they are inserted into it.
+     * The log is only complete once the writer is closed.
+     *
+     * @param output   Where to write the log.
+     * @param toolName The name of the tool which produced the reports, as shown by SARIF viewers.
+     * @return A new writer.
+     * @see SarifWriter
+     */
+    public DiagnosticWriter<Msg> sarifTo(final Appendable output, final String toolName) {
+        return new SarifWriter<>(output, toolName, report -> report.resolve(this::lineIndex));
+    }
+
+    /**
+     * Exports all the reports of the diagnostic as JSON Lines, in one pass and without rendering them.
+     *
+     * @see Diagnostic#jsonLinesTo(Appendable)
+     */
+    public void writeJsonLines(final Appendable output) {
+        try (final DiagnosticWriter<Msg> writer = this.jsonLinesTo(output)) {
+            this.reports.forEach(writer::withReport);
+        }
+    }
+
+    /**
+     * Exports all the reports of the diagnostic as a SARIF log, in one pass and without rendering them.
+     *
+     * @see Diagnostic#sarifTo(Appendable, String)
+     */
+    public void writeSarif(final Appendable output, final String toolName) {
+        try (final DiagnosticWriter<Msg> writer = this.sarifTo(output, toolName)) {
+            this.reports.forEach(writer::withReport);
+        }
+    }
+
+    /**
+     * Encodes the reports of the diagnostic in a compact binary form, for example to send them to another process
+     * which will print them with its own options.
+     *
+     * Only the lines of code needed to render the reports are stored, and messages are stored as plain text.
+     *
+     * @return A new buffer, ready to be read
+     * @see Diagnostic#encode(int)
+     * @see Diagnostic#decode(ByteBuffer, Function)
+     */
+    public ByteBuffer encode() {
+        return this.encode(0);
+    }
+
+    /**
+     * Encodes the reports of the diagnostic in a compact binary form.
+     *
+     * @param contextLines The number of lines around each marker to store as well,
+     *                     so that the reports can be rendered with up to as many lines of context.
+     * @return A new buffer, ready to be read
+     * @see RenderOptions#withContextLines(int)
+     */
+    public ByteBuffer encode(final int contextLines) {
+        return BinaryFormat.encode(this.reports, report -> report.resolve(this::lineIndex), this::line, Math.max(0, contextLines));
+    }
+
+    /**
+     * Decodes a diagnostic encoded with {@link #encode}, along with the lines of code stored with it.
+     *
+     * Lines of code are only decoded from the buffer when they are printed,
+     * so the buffer must not be modified as long as the diagnostic is in use.
+     *
+     * @param bytes    The encoded diagnostic, between the position and the limit of the buffer.
+     *                 The position of the buffer is not modified.
+     * @param messages Converts the plain text of messages back to messages, for example <code>StringPretty::new</code>.
+     * @return A new diagnostic, to which more files, source providers and reports can be added.
+     * @throws IllegalArgumentException if the buffer does not contain a diagnostic, or one encoded by an unsupported version
+     */
+    public static <Msg extends Pretty<Msg>> Diagnostic<Msg> decode(final ByteBuffer bytes, final Function<String, Msg> messages) {
+        return BinaryFormat.decode(bytes, messages);
+    }
+
+    /**
+     * Renders a single report as text, followed by an empty line.
+     */
+    private String render(final Report<Msg> report, final RenderOptions options, final FileGroup group) {
+        final StringBuilder output = new StringBuilder();
+        this.pretty(report, options, group)
+                .append(Doc.line())
+                .render(output, options.isColored());
+        return output.toString();
+    }
+
+    /**
+     * Renders a single report, or fetches it from the cache if there is one.
+     * Lines are fetched through the group of reports it is printed with, if any.
+     */
+    private Document pretty(final Report<Msg> report, final RenderOptions options, final FileGroup group) {
+        final SourceProvider sources = group == null ? this::line : group;
+
+        final RenderCache cache = this.cache;
+        if (cache == null)
+            return report.resolve(this::lineIndex).pretty(sources, options);
+
+        return cache.render(report, options, this.files::get, () -> report.resolve(this::lineIndex).pretty(sources, options));
+    }
+
+    /**
+     * Lists reports in the order in which they are printed, along with the group of reports they are printed with.
+     * Reports are only grouped when they are ordered by {@link ReportOrder#LOCATION},
+     * and groups are created while the stream is consumed, so that each group can be released as soon as it is printed.
+     */
+    private Stream<Map.Entry<Report<Msg>, FileGroup>> inPrintOrder() {
+        if (this.order == ReportOrder.INSERTION)
+            return this.reports.stream().map(report -> new AbstractMap.SimpleImmutableEntry<>(report, null));
+
+        final List<Map.Entry<Position, Report<Msg>>> located = new ArrayList<>(this.reports.size());
+        for (final Report<Msg> report : this.reports) {
+            Position primary = report.primaryPosition();
+            if (primary != null && primary.by_offset)
+                primary = primary.resolve(this.lineIndex(primary.file(), Math.max(primary.beginning_column, primary.ending_column)));
+            located.add(new AbstractMap.SimpleImmutableEntry<>(primary, report));
+        }
+        located.sort(Map.Entry.comparingByKey(Comparator.nullsLast(Comparator
+                .comparing(Position::file)
+                .thenComparingInt((Position pos) -> pos.beginning_line)
+                .thenComparingInt(pos -> pos.beginning_column))));
+        // the sort is stable, so reports at the same position stay in insertion order
+
+        final FileGroup[] current = {null};
+        return located.stream().map(entry -> {
+            final String file = entry.getKey() == null ? null : entry.getKey().file();
+            if (current[0] == null || !Objects.equals(current[0].file, file))
+                current[0] = new FileGroup(file, this::line);
+            return new AbstractMap.SimpleImmutableEntry<>(entry.getValue(), current[0]);
+        });
+    }
+
+    /**
+     * Indexes the lines of a file, to resolve positions given as offsets.
+     *
+     * The index is kept for as long as the file does not change: files added with {@link #withFile} are indexed again
+     * when they are replaced or when their version changes, and files coming from source providers when providers
+     * are added or removed (their content is assumed not to change otherwise, as in {@link RenderCache}).
+     *
+     * Files coming from source providers are only indexed as far as needed, as each of their lines has to be fetched.
+     * When a larger offset is needed later on, the index goes at least twice as far as before,
+     * so that reports ordered by offsets do not fetch the beginning of the file again and again.
+     *
+     * @param offset The largest offset the index must be able to convert
+     */
+    private LineIndex lineIndex(final String file, final long offset) {
+        final SourceFile source = this.files.get(file);
+        final long version = source == null ? this.providersVersion : source.version();
+
+        final IndexedFile cached = this.indices.get(file);
+        if (cached != null && cached.source == source && cached.version == version && cached.lastOffset >= offset)
+            return cached.index;
+
+        final IndexedFile indexed;
+        if (source == null) {
+            final long lastOffset = cached != null && cached.source == null && cached.version == version
+                    ? Math.max(offset, 2 * cached.lastOffset)
+                    : offset;
+            indexed = new IndexedFile(null, version, LineIndex.of(line -> this.line(file, line), lastOffset), lastOffset);
         } else {
-            doc.removeColors();
+            indexed = new IndexedFile(source, version, source.lineIndex(), Long.MAX_VALUE);
         }
+        this.indices.put(file, indexed);
+        // indexing twice in case of a race is harmless, as both results can convert the offset
+        return indexed.index;
+    }
+
+    /**
+     * A line index, along with the content of the file it was computed from.
+     */
+    private static final class IndexedFile {
+        /**
+         * The file added with {@link #withFile}, or <code>null</code> if the file comes from source providers.
+         */
+        private final SourceFile source;
+        /**
+         * The version of the file, or of source providers if there is no file.
+         */
+        private final long version;
+        private final LineIndex index;
+        /**
+         * The largest offset the index can convert.
+         */
+        private final long lastOffset;
 
-        doc.print(handle);
+        IndexedFile(final SourceFile source, final long version, final LineIndex index, final long lastOffset) {
+            this.source = source;
+            this.version = version;
+            this.index = index;
+            this.lastOffset = lastOffset;
+        }
+    }
+
+    /**
+     * The lines fetched while rendering consecutive reports of the same file,
+     * which are likely to be needed again by the next reports of the group.
+     * Groups may be used by several threads at once, when reports are rendered in parallel.
+     */
+    private static final class FileGroup implements SourceProvider {
+        private final String file;
+        private final SourceProvider sources;
+        private final Map<String, Map<Long, Optional<String>>> lines;
+
+        FileGroup(final String file, final SourceProvider sources) {
+            this.file = file;
+            this.sources = sources;
+            this.lines = new ConcurrentHashMap<>();
+        }
+
+        @Override
+        public Optional<String> line(final String file, final long line) {
+            return this.lines.computeIfAbsent(file, f -> new ConcurrentHashMap<>())
+                    .computeIfAbsent(line, n -> this.sources.line(file, n));
+        }
+    }
+
+    /**
+     * Fetches a line of a file, first looking at files added with {@link #withFile} then asking source providers.
+     */
+    private Optional<String> line(final String file, final long line) {
+        final SourceFile source = this.files.get(file);
+        if (source != null)
+            return source.line(line);
+
+        for (final SourceProvider provider : this.providers) {
+            final Optional<String> result = provider.line(file, line);
+            if (result.isPresent())
+                return result;
+        }
+        return Optional.empty();
     }
 }
@@ -0,0 +1,100 @@
+package com.github.mesabloo.diagnose4j;
+
+import com.github.mesabloo.diagnose4j.prettyprint.Doc;
+import com.github.mesabloo.diagnose4j.prettyprint.Document;
+
+import java.io.PrintStream;
+import java.util.function.BiFunction;
+
+/**
+ * A destination for reports which renders them as soon as they are inserted, instead of keeping them until the end.
+ *
+ * Rendered reports are accumulated in small batches before being written to the output stream, and are not retained
+ * afterwards, so that memory usage does not grow with the number of reports.
+ * Sinks are created with {@link Diagnostic#streamTo}, and use the files (and render cache) of their diagnostic.
+ *
+ * <pre><code>
+ * try (final DiagnosticSink&lt;Msg&gt; sink = diagnostic.streamTo(System.err, true, true)) {
+ *     for (final Report&lt;Msg&gt; report : compiler.run()) {
+ *         sink.withReport(report);
+ *     }
+ * }
+ * </code></pre>
+ */
+public final class DiagnosticSink<Msg extends Pretty<Msg>> implements AutoCloseable {
+    private final BiFunction<Report<Msg>, RenderOptions, Document> renderer;
+    private final ReportFilter<Msg> filter;
+    private final PrintStream handle;
+    private final RenderOptions options;
+    private final int batchSize;
+
+    private final StringBuilder batch;
+    private int reportsInBatch;
+    private boolean closed;
+
+    DiagnosticSink(
+            final BiFunction<Report<Msg>, RenderOptions, Document> renderer,
+            final ReportFilter<Msg> filter,
+            final PrintStream handle,
+            final RenderOptions options,
+            final int batchSize
+    ) {
+        this.renderer = renderer;
+        this.filter = filter;
+        this.handle = handle;
+        this.options = options;
+        this.batchSize = Math.max(1, batchSize);
+        this.batch = new StringBuilder();
+        this.reportsInBatch = 0;
+        this.closed = false;
+    }
+
+    /**
+     * Renders a new error/warning report.
+     *
+     * The report is written to the output stream as soon as enough reports have been rendered to fill a batch.
+     * Reports over the limits of the diagnostic are not rendered at all.
+     *
+     * @param report The report to render.
+     * @return The current sink.
+     */
+    public synchronized DiagnosticSink<Msg> withReport(final Report<Msg> report) {
+        if (!this.filter.accept(report))
+            return this;
+
+        this.renderer.apply(report, this.options)
+                .append(Doc.line())
+                .render(this.batch, this.options.isColored());
+
+        if (++this.reportsInBatch >= this.batchSize) {
+            this.flush();
+        }
+        return this;
+    }
+
+    /**
+     * Writes all reports rendered until now to the output stream.
+     */
+    public synchronized void flush() {
+        if (this.batch.length() > 0) {
+            this.handle.append(this.batch);
+            this.batch.setLength(0);
+        }
+        this.reportsInBatch = 0;
+        this.handle.flush();
+    }
+
+    /**
+     * Writes all remaining reports to the output stream, followed by how many reports were suppressed, if any.
+     * The output stream itself is not closed.
+     */
+    @Override
+    public synchronized void close() {
+        final Document summary = this.filter.summary();
+        if (summary != null && !this.closed) {
+            summary.append(Doc.line()).render(this.batch, this.options.isColored());
+        }
+        this.closed = true;
+        this.flush();
+    }
+}
@@ -0,0 +1,79 @@
+package com.github.mesabloo.diagnose4j;
+
+import java.util.function.Function;
+
+/**
+ * A destination writing reports in a machine-readable format as soon as they are inserted.
+ *
+ * Reports are walked directly, without being laid out as a {@link com.github.mesabloo.diagnose4j.prettyprint.Document},
+ * and nothing is retained once a report has been written, so that memory usage does not grow with the number of reports.
+ * Writers are created with {@link Diagnostic#jsonLinesTo} or {@link Diagnostic#sarifTo}.
+ *
+ * <pre><code>
+ * try (final DiagnosticWriter&lt;Msg&gt; writer = diagnostic.sarifTo(output, "mycompiler")) {
+ *     for (final Report&lt;Msg&gt; report : compiler.run()) {
+ *         writer.withReport(report);
+ *     }
+ * }
+ * </code></pre>
+ *
+ * @param <Msg>
+ * @see JsonLinesWriter
+ * @see SarifWriter
+ */
+public abstract class DiagnosticWriter<Msg extends Pretty<Msg>> implements AutoCloseable {
+    final JsonOutput out;
+    private final Function<Report<Msg>, Report<Msg>> resolver;
+    private boolean closed;
+
+    DiagnosticWriter(final JsonOutput out, final Function<Report<Msg>, Report<Msg>> resolver) {
+        this.out = out;
+        this.resolver = resolver;
+        this.closed = false;
+    }
+
+    /**
+     * Writes a new error/warning report.
+     *
+     * @param report The report to write.
+     * @return The current writer.
+     * @throws IllegalStateException if the writer has already been closed
+     */
+    public synchronized DiagnosticWriter<Msg> withReport(final Report<Msg> report) {
+        if (this.closed)
+            throw new IllegalStateException("Cannot write a report after the writer has been closed");
+
+        this.write(this.resolver.apply(report));
+        return this;
+    }
+
+    /**
+     * Flushes the output, if it can be flushed.
+     */
+    public synchronized void flush() {
+        this.out.flush();
+    }
+
+    /**
+     * Ends the document, and flushes the output.
+     * The output itself is not closed.
+     */
+    @Override
+    public synchronized void close() {
+        if (!this.closed) {
+            this.closed = true;
+            this.end();
+        }
+        this.flush();
+    }
+
+    /**
+     * Writes a single report, whose positions are all given as lines and columns.
+     */
+    abstract void write(Report<Msg> report);
+
+    /**
+     * Writes whatever must come after the last report.
+     */
+    abstract void end();
+}
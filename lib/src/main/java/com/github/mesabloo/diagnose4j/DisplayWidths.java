@@ -0,0 +1,159 @@
+package com.github.mesabloo.diagnose4j;
+
+/**
+ * The number of terminal columns taken by each character of a source line.
+ *
+ * Tabs are expanded up to the next tab stop, East Asian wide characters take two columns,
+ * and combining marks, format and control characters take none (as do low surrogates, the width of a supplementary
+ * character being given to its high surrogate).
+ * Widths are summed once per line into a prefix table, so that converting a column takes constant time.
+ * Lines made only of printable ASCII characters share a single table mapping every column to itself.
+ */
+final class DisplayWidths {
+    private static final DisplayWidths IDENTITY = new DisplayWidths(null);
+
+    /**
+     * Ranges (inclusive) of wide code points, sorted and disjoint, stored as consecutive pairs.
+     */
+    private static final int[] WIDE = {
+            0x1100, 0x115F, 0x231A, 0x231B, 0x2329, 0x232A, 0x23E9, 0x23EC, 0x23F0, 0x23F0, 0x23F3, 0x23F3,
+            0x25FD, 0x25FE, 0x2614, 0x2615, 0x2648, 0x2653, 0x267F, 0x267F, 0x2693, 0x2693, 0x26A1, 0x26A1,
+            0x26AA, 0x26AB, 0x26BD, 0x26BE, 0x26C4, 0x26C5, 0x26CE, 0x26CE, 0x26D4, 0x26D4, 0x26EA, 0x26EA,
+            0x26F2, 0x26F3, 0x26F5, 0x26F5, 0x26FA, 0x26FA, 0x26FD, 0x26FD, 0x2705, 0x2705, 0x270A, 0x270B,
+            0x2728, 0x2728, 0x274C, 0x274C, 0x274E, 0x274E, 0x2753, 0x2755, 0x2757, 0x2757, 0x2795, 0x2797,
+            0x27B0, 0x27B0, 0x27BF, 0x27BF, 0x2B1B, 0x2B1C, 0x2B50, 0x2B50, 0x2B55, 0x2B55, 0x2E80, 0x303E,
+            0x3041, 0x33FF, 0x3400, 0x4DBF, 0x4E00, 0x9FFF, 0xA000, 0xA4CF, 0xA960, 0xA97F, 0xAC00, 0xD7A3,
+            0xF900, 0xFAFF, 0xFE10, 0xFE19, 0xFE30, 0xFE6F, 0xFF00, 0xFF60, 0xFFE0, 0xFFE6,
+            0x1F004, 0x1F004, 0x1F0CF, 0x1F0CF, 0x1F18E, 0x1F18E, 0x1F191, 0x1F19A, 0x1F200, 0x1F251,
+            0x1F300, 0x1F64F, 0x1F680, 0x1F6FF, 0x1F900, 0x1F9FF, 0x20000, 0x2FFFD, 0x30000, 0x3FFFD,
+    };
+
+    /**
+     * <code>starts[i]</code> is the display column (starting at 0) where the <code>i</code>-th character of the line starts,
+     * and <code>starts[line.length()]</code> is the width of the whole line.
+     */
+    private final int[] starts;
+
+    private DisplayWidths(final int[] starts) {
+        this.starts = starts;
+    }
+
+    /**
+     * @return Widths where every character takes a single column
+     */
+    static DisplayWidths identity() {
+        return IDENTITY;
+    }
+
+    /**
+     * Computes the display widths of all characters of a line.
+     *
+     * @param tabWidth The distance between two tab stops
+     */
+    static DisplayWidths of(final String line, final int tabWidth) {
+        final int length = line.length();
+        int i = 0;
+        while (i < length && line.charAt(i) >= 0x20 && line.charAt(i) < 0x7F) {
+            ++i;
+        }
+        if (i == length)
+            return IDENTITY;
+
+        final int[] starts = new int[length + 1];
+        for (int j = 1; j <= i; ++j) {
+            starts[j] = j;
+        }
+
+        int column = i;
+        for (; i < length; ++i) {
+            starts[i] = column;
+
+            final char c = line.charAt(i);
+            if (c == '\t') {
+                column += tabWidth - column % tabWidth;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(line.charAt(i + 1))) {
+                column += width(Character.toCodePoint(c, line.charAt(i + 1)));
+                starts[++i] = column;
+                // the low surrogate does not take any room by itself
+            } else {
+                column += width(c);
+            }
+        }
+        starts[length] = column;
+
+        return new DisplayWidths(starts);
+    }
+
+    /**
+     * @return Whether every character of the line takes a single column
+     */
+    boolean isIdentity() {
+        return this.starts == null;
+    }
+
+    /**
+     * @param column A column in the line, counted in characters and starting at 1 (possibly after the end of the line)
+     * @return The display column (starting at 1) where the character at the given column is shown
+     */
+    long column(final long column) {
+        if (this.starts == null || column < 1)
+            return column;
+
+        final int length = this.starts.length - 1;
+        if (column > length)
+            return this.starts[length] + column - length;
+        return this.starts[(int) column - 1] + 1;
+    }
+
+    /**
+     * @param line  The line these widths were computed for
+     * @param start The first column to include, starting at 1
+     * @param end   The first column to exclude
+     * @return The characters of the line between the given columns, where tabs are replaced by spaces
+     */
+    String substring(final String line, final int start, final int end) {
+        if (this.starts == null || line.indexOf('\t', start - 1) < 0)
+            return line.substring(start - 1, end - 1);
+
+        final StringBuilder builder = new StringBuilder(end - start);
+        for (int i = start - 1; i < end - 1; ++i) {
+            final char c = line.charAt(i);
+            if (c == '\t') {
+                for (int j = this.starts[i]; j < this.starts[i + 1]; ++j) {
+                    builder.append(' ');
+                }
+            } else {
+                builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+
+    private static int width(final int codePoint) {
+        switch (Character.getType(codePoint)) {
+            case Character.NON_SPACING_MARK:
+            case Character.ENCLOSING_MARK:
+            case Character.FORMAT:
+            case Character.CONTROL:
+                return 0;
+            default:
+                break;
+        }
+        if (codePoint == 0x200B || (codePoint >= 0x1160 && codePoint <= 0x11FF))
+            return 0;
+        // zero width space, and Hangul vowels and final consonants which combine with the previous character
+
+        int low = 0;
+        int high = WIDE.length / 2 - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            if (codePoint < WIDE[2 * mid])
+                high = mid - 1;
+            else if (codePoint > WIDE[2 * mid + 1])
+                low = mid + 1;
+            else
+                return 2;
+        }
+        return 1;
+    }
+}
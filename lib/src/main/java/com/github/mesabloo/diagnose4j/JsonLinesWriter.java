@@ -0,0 +1,63 @@
+package com.github.mesabloo.diagnose4j;
+
+import java.util.function.Function;
+
+/**
+ * Writes reports in the <a href="https://jsonlines.org/">JSON Lines</a> format: one JSON object per line and per report.
+ *
+ * Each report is written as:
+ * <pre><code>
+ * {"severity":"error","message":"...",
+ *  "markers":[{"kind":"this","message":"...","file":"...","startLine":1,"startColumn":5,"endLine":1,"endColumn":7}],
+ *  "hints":["..."]}
+ * </code></pre>
+ * where <code>kind</code> is one of <code>this</code>, <code>where</code> or <code>maybe</code>,
+ * markers are sorted by line, columns start at <code>1</code>, and the end column is excluded.
+ * Messages are rendered as plain text, without colors.
+ *
+ * @param <Msg>
+ */
+public final class JsonLinesWriter<Msg extends Pretty<Msg>> extends DiagnosticWriter<Msg> {
+    JsonLinesWriter(final Appendable out, final Function<Report<Msg>, Report<Msg>> resolver) {
+        super(new JsonOutput(out), resolver);
+    }
+
+    @Override
+    void write(final Report<Msg> report) {
+        this.out.raw('{')
+                .key("severity").string(report.isError() ? "error" : "warning")
+                .raw(',').key("message").message(report.message())
+                .raw(',').key("markers").raw('[');
+
+        final MarkerTable<Msg> markers = report.markers();
+        for (int i = 0; i < markers.size(); ++i) {
+            final Position pos = markers.position(i);
+            if (i > 0)
+                this.out.raw(',');
+            this.out.raw('{')
+                    .key("kind").string(Report.kind(markers.marker(i)))
+                    .raw(',').key("message").message(markers.marker(i).getMessage())
+                    .raw(',').key("file").string(pos.file())
+                    .raw(',').key("startLine").number(pos.beginning_line)
+                    .raw(',').key("startColumn").number(pos.beginning_column)
+                    .raw(',').key("endLine").number(pos.ending_line)
+                    .raw(',').key("endColumn").number(pos.ending_column)
+                    .raw('}');
+        }
+
+        this.out.raw(']').raw(',').key("hints").raw('[');
+        boolean first = true;
+        for (final Msg hint : report.hints()) {
+            if (!first)
+                this.out.raw(',');
+            this.out.message(hint);
+            first = false;
+        }
+        this.out.raw("]}\n");
+    }
+
+    @Override
+    void end() {
+        // every line is a complete document on its own
+    }
+}
@@ -0,0 +1,116 @@
+package com.github.mesabloo.diagnose4j;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Writes JSON tokens directly to an output, without building any tree of values first.
+ *
+ * Callers are responsible for the structure of the document (commas, nesting),
+ * this class only takes care of escaping strings and of I/O errors.
+ */
+final class JsonOutput {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Appendable out;
+
+    /**
+     * Messages are rendered here before being escaped, and the buffer is reused from one message to the next.
+     */
+    private final StringBuilder scratch;
+
+    JsonOutput(final Appendable out) {
+        this.out = out;
+        this.scratch = new StringBuilder();
+    }
+
+    /**
+     * Writes some JSON text as is.
+     */
+    JsonOutput raw(final String json) {
+        try {
+            this.out.append(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return this;
+    }
+
+    JsonOutput raw(final char c) {
+        try {
+            this.out.append(c);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return this;
+    }
+
+    JsonOutput number(final long n) {
+        return this.raw(Long.toString(n));
+    }
+
+    /**
+     * Writes an object key, followed by a colon.
+     */
+    JsonOutput key(final String key) {
+        return this.string(key).raw(':');
+    }
+
+    /**
+     * Writes a string literal, escaping quotes, backslashes and control characters.
+     */
+    JsonOutput string(final CharSequence s) {
+        try {
+            this.out.append('"');
+            int run = 0;
+            // characters which need no escaping are copied in runs
+            // (line and paragraph separators are escaped too, as some JSON readers choke on them)
+            for (int i = 0; i < s.length(); ++i) {
+                final char c = s.charAt(i);
+                if (c >= 0x20 && c != '"' && c != '\\' && c != 0x2028 && c != 0x2029)
+                    continue;
+
+                this.out.append(s, run, i);
+                run = i + 1;
+                switch (c) {
+                    case '"': this.out.append("\\\""); break;
+                    case '\\': this.out.append("\\\\"); break;
+                    case '\n': this.out.append("\\n"); break;
+                    case '\r': this.out.append("\\r"); break;
+                    case '\t': this.out.append("\\t"); break;
+                    default:
+                        this.out.append("\\u")
+                                .append(HEX[c >> 12 & 0xF]).append(HEX[c >> 8 & 0xF])
+                                .append(HEX[c >> 4 & 0xF]).append(HEX[c & 0xF]);
+                }
+            }
+            this.out.append(s, run, s.length()).append('"');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return this;
+    }
+
+    /**
+     * Writes a message as a string literal, rendered without colors.
+     */
+    JsonOutput message(final Pretty<?> msg) {
+        this.scratch.setLength(0);
+        msg.pretty().render(this.scratch, false);
+        return this.string(this.scratch);
+    }
+
+    /**
+     * Flushes the output, if it can be flushed.
+     */
+    void flush() {
+        if (this.out instanceof Flushable) {
+            try {
+                ((Flushable) this.out).flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.github.mesabloo.diagnose4j;
+
+import com.github.mesabloo.diagnose4j.report.Marker;
+
+import java.util.*;
+
+/**
+ * An index answering, for any line of a sub-report, which markers are found on it.
+ *
+ * It is built once per sub-report, so that rendering a line does not need to go through all the markers of the report.
+ * Lists returned by the index are shared and must not be modified.
+ */
+final class MarkerIndex<Msg extends Pretty<Msg>> {
+    /**
+     * Inline markers, grouped by the line they are on.
+     */
+    private final Map<Long, List<Map.Entry<Position, Marker<Msg>>>> inlineMarkers;
+
+    /**
+     * Multiline markers, grouped by the lines they start or end on.
+     */
+    private final Map<Long, List<Map.Entry<Position, Marker<Msg>>>> multilineBoundaries;
+
+    /**
+     * Multiline markers strictly spanning over lines.
+     *
+     * Lines where multiline markers start or end split the file in segments, in which the same markers span over all lines.
+     * Each segment is stored under the first line it contains, so that the segment of a line is its floor entry.
+     */
+    private final TreeMap<Long, List<Map.Entry<Position, Marker<Msg>>>> spanningSegments;
+
+    /**
+     * Builds the index for the markers of a sub-report.
+     *
+     * @param inlineMarkers    Inline markers grouped per line
+     * @param multilineMarkers All multiline markers, in the order in which they should be returned
+     */
+    MarkerIndex(
+            final Map<Long, List<Map.Entry<Position, Marker<Msg>>>> inlineMarkers,
+            final List<Map.Entry<Position, Marker<Msg>>> multilineMarkers
+    ) {
+        this.inlineMarkers = inlineMarkers;
+        this.multilineBoundaries = new HashMap<>();
+        this.spanningSegments = new TreeMap<>();
+
+        final List<Map.Entry<Position, Marker<Msg>>> markers = new ArrayList<>(multilineMarkers);
+        final TreeSet<Long> boundaries = new TreeSet<>();
+        final long[] starts = new long[markers.size()];
+        final long[] ends = new long[markers.size()];
+        int spans = 0;
+        for (int i = 0; i < markers.size(); ++i) {
+            final Map.Entry<Position, Marker<Msg>> entry = markers.get(i);
+            final Position pos = entry.getKey();
+
+            this.multilineBoundaries.computeIfAbsent((long) pos.beginning_line, k -> new ArrayList<>()).add(entry);
+            if (pos.ending_line != pos.beginning_line) {
+                this.multilineBoundaries.computeIfAbsent((long) pos.ending_line, k -> new ArrayList<>()).add(entry);
+            }
+
+            boundaries.add((long) pos.beginning_line);
+            boundaries.add((long) pos.ending_line);
+
+            if (pos.beginning_line < pos.ending_line) {
+                starts[spans] = (long) pos.beginning_line << 32 | i;
+                ends[spans] = (long) pos.ending_line << 32 | i;
+                ++spans;
+            }
+            // markers on a single line never span over any line
+        }
+        Arrays.sort(starts, 0, spans);
+        Arrays.sort(ends, 0, spans);
+
+        // sweep over boundaries, keeping the set of markers which started before and have not ended yet
+        final BitSet active = new BitSet(markers.size());
+        List<Map.Entry<Position, Marker<Msg>>> segment = Collections.emptyList();
+        boolean changed = false;
+        int start = 0;
+        int end = 0;
+        for (final long boundary : boundaries) {
+            for (; end < spans && ends[end] >>> 32 <= boundary; ++end) {
+                active.clear((int) ends[end]);
+                changed = true;
+            }
+            if (changed) {
+                segment = spanning(markers, active);
+                changed = false;
+            }
+            // the boundary line itself, spanned by markers starting before it and ending after it
+            this.spanningSegments.put(boundary, segment);
+
+            for (; start < spans && starts[start] >>> 32 <= boundary; ++start) {
+                active.set((int) starts[start]);
+                changed = true;
+            }
+            if (changed) {
+                segment = spanning(markers, active);
+                changed = false;
+            }
+            // all the lines between this boundary and the next one, spanned by markers starting at or before this boundary
+            // and ending at or after the next one
+            final Long next = boundaries.higher(boundary);
+            if (next == null) {
+                this.spanningSegments.put(boundary + 1, Collections.emptyList());
+            } else if (next > boundary + 1) {
+                this.spanningSegments.put(boundary + 1, segment);
+            }
+        }
+    }
+
+    /**
+     * @return All inline markers found on the given line, in the order they were inserted
+     */
+    List<Map.Entry<Position, Marker<Msg>>> inlineMarkersInLine(final long line) {
+        return this.inlineMarkers.getOrDefault(line, Collections.emptyList());
+    }
+
+    /**
+     * @return All multiline markers starting or ending on the given line
+     */
+    List<Map.Entry<Position, Marker<Msg>>> multilineMarkersInLine(final long line) {
+        return this.multilineBoundaries.getOrDefault(line, Collections.emptyList());
+    }
+
+    /**
+     * @return All multiline markers starting strictly before and ending strictly after the given line
+     */
+    List<Map.Entry<Position, Marker<Msg>>> multilineMarkersSpanningLine(final long line) {
+        final Map.Entry<Long, List<Map.Entry<Position, Marker<Msg>>>> segment = this.spanningSegments.floorEntry(line);
+        return segment == null ? Collections.emptyList() : segment.getValue();
+    }
+
+    /**
+     * @return Is the given line between the first and last line (both included) of any multiline marker?
+     */
+    boolean inSpanOfMultiline(final long line) {
+        return !this.multilineMarkersInLine(line).isEmpty() || !this.multilineMarkersSpanningLine(line).isEmpty();
+    }
+
+    /**
+     * Retrieves the markers at the given indices, in their original order.
+     */
+    private static <Msg extends Pretty<Msg>> List<Map.Entry<Position, Marker<Msg>>> spanning(
+            final List<Map.Entry<Position, Marker<Msg>>> markers,
+            final BitSet indices
+    ) {
+        final List<Map.Entry<Position, Marker<Msg>>> result = new ArrayList<>(indices.cardinality());
+        for (int i = indices.nextSetBit(0); i >= 0; i = indices.nextSetBit(i + 1)) {
+            result.add(markers.get(i));
+        }
+        return result;
+    }
+}
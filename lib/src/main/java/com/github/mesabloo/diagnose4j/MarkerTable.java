@@ -0,0 +1,136 @@
+package com.github.mesabloo.diagnose4j;
+
+import com.github.mesabloo.diagnose4j.report.Marker;
+import com.github.mesabloo.diagnose4j.source.LineIndex;
+
+import java.util.*;
+import java.util.function.BiFunction;
+
+/**
+ * The markers of a report, stored in parallel arrays sorted once and for all in the order in which they are rendered:
+ * by beginning line, then by insertion order.
+ *
+ * @param <Msg>
+ */
+final class MarkerTable<Msg extends Pretty<Msg>> {
+    private final Position[] positions;
+    private final Marker<Msg>[] markers;
+    private final boolean hasOffsets;
+
+    /**
+     * Sorts the first <code>size</code> markers of the given arrays, which are not modified.
+     */
+    @SuppressWarnings("unchecked")
+    MarkerTable(final Position[] positions, final Marker<Msg>[] markers, final int size) {
+        final long[] keys = new long[size];
+        for (int i = 0; i < size; ++i) {
+            keys[i] = (long) positions[i].beginning_line << 32 | i;
+        }
+        Arrays.sort(keys);
+        // the insertion index in the low bits makes the sort stable, without boxing anything
+
+        this.positions = new Position[size];
+        this.markers = (Marker<Msg>[]) new Marker<?>[size];
+        boolean hasOffsets = false;
+        for (int i = 0; i < size; ++i) {
+            final int index = (int) keys[i];
+            this.positions[i] = positions[index];
+            this.markers[i] = markers[index];
+            hasOffsets |= positions[index].by_offset;
+        }
+        this.hasOffsets = hasOffsets;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <Msg extends Pretty<Msg>> MarkerTable<Msg> of(final Map<Position, Marker<Msg>> markers) {
+        final Position[] positions = new Position[markers.size()];
+        final Marker<Msg>[] values = (Marker<Msg>[]) new Marker<?>[markers.size()];
+        int i = 0;
+        for (final Map.Entry<Position, Marker<Msg>> entry : markers.entrySet()) {
+            positions[i] = entry.getKey();
+            values[i] = entry.getValue();
+            ++i;
+        }
+        return new MarkerTable<>(positions, values, i);
+    }
+
+    int size() {
+        return this.positions.length;
+    }
+
+    boolean isEmpty() {
+        return this.positions.length == 0;
+    }
+
+    Position position(final int i) {
+        return this.positions[i];
+    }
+
+    Marker<Msg> marker(final int i) {
+        return this.markers[i];
+    }
+
+    /**
+     * @return Whether some positions are given as offsets, and must be resolved before rendering
+     */
+    boolean hasOffsets() {
+        return this.hasOffsets;
+    }
+
+    /**
+     * Converts all positions given as offsets to lines and columns.
+     *
+     * @param indices Fetches the line index of a file, along with the largest offset it must be able to convert.
+     *                It is called at most once per file.
+     * @return A new sorted table, where all positions are resolved
+     */
+    MarkerTable<Msg> resolve(final BiFunction<String, Long, LineIndex> indices) {
+        final Map<String, Long> lastOffsets = new HashMap<>();
+        for (final Position pos : this.positions) {
+            if (pos.by_offset)
+                lastOffsets.merge(pos.file_name, (long) Math.max(pos.beginning_column, pos.ending_column), Math::max);
+        }
+        // find how far each file has to be indexed first, so that files are indexed only once and no further than needed
+
+        final Map<String, LineIndex> resolved = new HashMap<>();
+        final Position[] positions = new Position[this.positions.length];
+        for (int i = 0; i < positions.length; ++i) {
+            final Position pos = this.positions[i];
+            positions[i] = pos.by_offset
+                    ? pos.resolve(resolved.computeIfAbsent(pos.file_name, file -> indices.apply(file, lastOffsets.get(file))))
+                    : pos;
+        }
+        return new MarkerTable<>(positions, this.markers, positions.length);
+        // markers given by offsets were all on line 0, so the table has to be sorted again
+    }
+
+    /**
+     * @return The names of all the files referenced by the markers, in alphabetical order
+     */
+    SortedSet<String> files() {
+        final SortedSet<String> files = new TreeSet<>();
+        String last = null;
+        for (final Position pos : this.positions) {
+            if (pos.file_name != last)
+                files.add(pos.file_name);
+            last = pos.file_name;
+        }
+        // markers in the same file usually share the same string, so most runs of markers in a file are skipped
+        // without comparing strings (and the set ignores the other ones anyway)
+        return files;
+    }
+
+    /**
+     * Groups markers by file, keeping files in the order they first appear in, and markers sorted inside each group.
+     *
+     * @return A new list of groups, each group being a new list
+     */
+    List<List<Map.Entry<Position, Marker<Msg>>>> groupPerFile() {
+        final Map<String, List<Map.Entry<Position, Marker<Msg>>>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < this.positions.length; ++i) {
+            groups.computeIfAbsent(this.positions[i].file_name, file -> new ArrayList<>())
+                    .add(new AbstractMap.SimpleImmutableEntry<>(this.positions[i], this.markers[i]));
+        }
+        return new ArrayList<>(groups.values());
+    }
+}
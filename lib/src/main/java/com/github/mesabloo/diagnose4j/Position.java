@@ -1,13 +1,20 @@
 package com.github.mesabloo.diagnose4j;
 
+import com.github.mesabloo.diagnose4j.source.LineIndex;
+
 import java.util.Objects;
 
 public final class Position implements Comparable<Position> {
-    final long beginning_line;
-    final long beginning_column;
-    final long ending_line;
-    final long ending_column;
-    final String file;
+    final int beginning_line;
+    final int beginning_column;
+    final int ending_line;
+    final int ending_column;
+    final String file_name;
+    /**
+     * Whether this position has not been resolved yet, in which case columns hold character offsets
+     * and lines are meaningless.
+     */
+    final boolean by_offset;
 
     /**
      * Creates a new position from various position information.
@@ -17,13 +24,40 @@ public final class Position implements Comparable<Position> {
      * @param end_line     The line where the token ends
      * @param end_column   The column where the tokens ends
      * @param file         The file in which the token occurs
+     * @throws IllegalArgumentException if a line or column does not fit in an <code>int</code>
      */
     public Position(final long start_line, final long start_column, final long end_line, final long end_column, final String file) {
+        this.beginning_line = toInt(start_line);
+        this.beginning_column = toInt(start_column);
+        this.ending_line = toInt(end_line);
+        this.ending_column = toInt(end_column);
+        this.file_name = file;
+        this.by_offset = false;
+    }
+
+    Position(final int start_line, final int start_column, final int end_line, final int end_column, final String file_name, final boolean by_offset) {
         this.beginning_line = start_line;
         this.beginning_column = start_column;
         this.ending_line = end_line;
         this.ending_column = end_column;
-        this.file = file;
+        this.file_name = file_name;
+        this.by_offset = by_offset;
+    }
+
+    /**
+     * Creates a new position from character offsets in a file, for example as produced by a lexer.
+     *
+     * Offsets are only converted to lines and columns when a report containing the position is printed,
+     * using the content of the file known at that time.
+     *
+     * @param start_offset The offset of the first character of the token, starting at 0
+     * @param end_offset   The offset right after the last character of the token
+     * @param file         The file in which the token occurs
+     * @return A new unresolved position
+     * @throws IllegalArgumentException if an offset does not fit in an <code>int</code>
+     */
+    public static Position fromOffsets(final long start_offset, final long end_offset, final String file) {
+        return new Position(0, toInt(start_offset), 0, toInt(end_offset), file, true);
     }
 
     /**
@@ -41,7 +75,9 @@ public final class Position implements Comparable<Position> {
 
     @Override
     public String toString() {
-        return this.file + "@" + this.beginning_line + ":" + this.beginning_column + "-" + this.ending_line + ":" + this.ending_column;
+        if (this.by_offset)
+            return this.file() + "@" + this.beginning_column + "-" + this.ending_column;
+        return this.file() + "@" + this.beginning_line + ":" + this.beginning_column + "-" + this.ending_line + ":" + this.ending_column;
     }
 
     @Override
@@ -49,12 +85,18 @@ public final class Position implements Comparable<Position> {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         Position position = (Position) o;
-        return beginning_line == position.beginning_line && beginning_column == position.beginning_column && ending_line == position.ending_line && ending_column == position.ending_column && Objects.equals(file, position.file);
+        return beginning_line == position.beginning_line && beginning_column == position.beginning_column && ending_line == position.ending_line && ending_column == position.ending_column && Objects.equals(file_name, position.file_name) && by_offset == position.by_offset;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(beginning_line, beginning_column, ending_line, ending_column, file);
+        int result = beginning_line;
+        result = 31 * result + beginning_column;
+        result = 31 * result + ending_line;
+        result = 31 * result + ending_column;
+        result = 31 * result + (file_name == null ? 0 : file_name.hashCode());
+        result = 31 * result + (by_offset ? 1 : 0);
+        return result;
     }
 
     @Override
@@ -74,4 +116,40 @@ public final class Position implements Comparable<Position> {
 
         return 1;
     }
-}
\ No newline at end of file
+
+    /**
+     * Converts the offsets of an unresolved position to lines and columns.
+     *
+     * @param index The line index of the file of the position
+     * @return A position with lines and columns, or the current position if it is already resolved
+     */
+    Position resolve(final LineIndex index) {
+        if (!this.by_offset)
+            return this;
+
+        return new Position(
+                toInt(index.line(this.beginning_column)), toInt(index.column(this.beginning_column)),
+                toInt(index.line(this.ending_column)), toInt(index.column(this.ending_column)),
+                this.file_name, false);
+    }
+
+    /**
+     * @return A position on the same lines and in the same file, but between other columns
+     */
+    Position withColumns(final long start_column, final long end_column) {
+        return new Position(this.beginning_line, toInt(start_column), this.ending_line, toInt(end_column), this.file_name, this.by_offset);
+    }
+
+    /**
+     * @return The name of the file in which the position is
+     */
+    String file() {
+        return this.file_name;
+    }
+
+    private static int toInt(final long n) {
+        if (n < Integer.MIN_VALUE || n > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Line or column " + n + " is too large");
+        return (int) n;
+    }
+}
@@ -0,0 +1,154 @@
+package com.github.mesabloo.diagnose4j;
+
+import com.github.mesabloo.diagnose4j.prettyprint.Document;
+import com.github.mesabloo.diagnose4j.source.SourceFile;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * A bounded cache of rendered reports, meant for programs printing the same reports over and over,
+ * such as language servers.
+ *
+ * Entries are keyed on the identity of the report (reports are immutable), the rendering options, and the version
+ * of every file registered with {@link Diagnostic#withFile} that the report references.
+ * Colors are not part of the key, as they are only applied when the rendered report is printed.
+ * Files coming from a {@link com.github.mesabloo.diagnose4j.source.SourceProvider} are assumed not to change;
+ * call {@link #clear()} if they do.
+ * When the cache is full, the least recently used entry is evicted.
+ *
+ * <pre><code>
+ * final RenderCache cache = new RenderCache(1024);
+ * diagnostic.withRenderCache(cache);
+ * </code></pre>
+ * A single cache may be shared by several diagnostics, and used from several threads at once.
+ */
+public final class RenderCache {
+    private final Map<Key, Document> entries;
+    private long hits;
+    private long misses;
+
+    /**
+     * @param maxEntries The maximum number of rendered reports to keep
+     */
+    public RenderCache(final int maxEntries) {
+        if (maxEntries < 1)
+            throw new IllegalArgumentException("A render cache must be able to hold at least one report");
+
+        this.entries = new LinkedHashMap<Key, Document>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Key, Document> eldest) {
+                return this.size() > maxEntries;
+            }
+        };
+        this.hits = 0;
+        this.misses = 0;
+    }
+
+    /**
+     * @return The number of renderings which were found in the cache
+     */
+    public synchronized long hits() {
+        return this.hits;
+    }
+
+    /**
+     * @return The number of renderings which had to be computed
+     */
+    public synchronized long misses() {
+        return this.misses;
+    }
+
+    /**
+     * @return The number of rendered reports currently kept
+     */
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * Removes all rendered reports from the cache.
+     * Hit and miss counters are left untouched.
+     */
+    public synchronized void clear() {
+        this.entries.clear();
+    }
+
+    /**
+     * Fetches the rendering of a report, rendering it if it is not in the cache yet.
+     *
+     * @param files  Finds the registered content of a file, or returns <code>null</code>
+     * @param render Renders the report, when it is not cached
+     * @return A new document, which may be freely appended to
+     */
+    Document render(final Report<?> report, final RenderOptions options, final Function<String, SourceFile> files, final Supplier<Document> render) {
+        final Key key = new Key(report, options, files);
+
+        Document doc;
+        synchronized (this) {
+            doc = this.entries.get(key);
+            if (doc != null)
+                ++this.hits;
+            else
+                ++this.misses;
+        }
+
+        if (doc == null) {
+            doc = render.get();
+            // rendering happens outside of the lock, so that other threads can still use the cache meanwhile
+
+            synchronized (this) {
+                this.entries.put(key, doc);
+            }
+        }
+
+        return new Document().appendDoc(doc);
+        // documents share their parts, so this is a cheap way to prevent the caller from modifying the cached document
+    }
+
+    private static final class Key {
+        private final Report<?> report;
+        private final RenderOptions options;
+        /**
+         * For every file of the report, the registered file (or <code>null</code>) followed by its version.
+         */
+        private final Object[] sources;
+        private final int hash;
+
+        Key(final Report<?> report, final RenderOptions options, final Function<String, SourceFile> files) {
+            this.report = report;
+            this.options = options.withColors(false);
+            // reports are rendered the same way with or without colors, so a single entry serves both
+
+            final Set<String> names = report.files();
+            final Object[] sources = new Object[2 * names.size()];
+            int i = 0;
+            for (final String file : names) {
+                final SourceFile source = files.apply(file);
+                sources[i++] = source;
+                sources[i++] = source == null ? 0L : source.version();
+            }
+            this.sources = sources;
+
+            this.hash = 31 * (31 * System.identityHashCode(report) + this.options.hashCode()) + Arrays.hashCode(sources);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return report == key.report && Objects.equals(options, key.options) && Arrays.equals(sources, key.sources);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.github.mesabloo.diagnose4j;
+
+import java.util.Objects;
+
+/**
+ * Settings controlling how reports are rendered.
+ *
+ * Options are immutable: each <code>with</code> method returns a modified copy.
+ * This allows rendering several diagnostics concurrently, each with its own settings, without any shared state.
+ * <pre><code>
+ * final RenderOptions options = RenderOptions.defaults()
+ *         .withColors(false)
+ *         .withMultilineElision(3);
+ * diagnostic.print(System.out, options);
+ * </code></pre>
+ */
+public final class RenderOptions {
+    private static final RenderOptions DEFAULTS = new RenderOptions(true, true, 0, 4, 0, 0);
+
+    private final boolean withUnicode;
+    private final boolean withColors;
+    private final long multilineElision;
+    private final int tabWidth;
+    private final int width;
+    private final int contextLines;
+
+    private RenderOptions(final boolean withUnicode, final boolean withColors, final long multilineElision, final int tabWidth, final int width, final int contextLines) {
+        this.withUnicode = withUnicode;
+        this.withColors = withColors;
+        this.multilineElision = multilineElision;
+        this.tabWidth = tabWidth;
+        this.width = width;
+        this.contextLines = contextLines;
+    }
+
+    /**
+     * Default options are:
+     * <ul>
+     *     <li>Unicode characters are used</li>
+     *     <li>Output is colored</li>
+     *     <li>All lines of multiline markers are shown</li>
+     *     <li>Tab stops are every 4 columns</li>
+     *     <li>Source lines are shown entirely, however long they are</li>
+     *     <li>Only lines with markers are shown, without any context</li>
+     * </ul>
+     *
+     * @return The default rendering options
+     */
+    public static RenderOptions defaults() {
+        return DEFAULTS;
+    }
+
+    /**
+     * @param withUnicode Specifies whether Unicode characters are wanted
+     */
+    public RenderOptions withUnicode(final boolean withUnicode) {
+        return new RenderOptions(withUnicode, this.withColors, this.multilineElision, this.tabWidth, this.width, this.contextLines);
+    }
+
+    /**
+     * @param withColors Must the output be colored?
+     *                   (Disable if printing to a stream other than {@link System#out} and {@link System#err})
+     */
+    public RenderOptions withColors(final boolean withColors) {
+        return new RenderOptions(this.withUnicode, withColors, this.multilineElision, this.tabWidth, this.width, this.contextLines);
+    }
+
+    /**
+     * @param multilineElision The number of lines to show at both ends of a multiline marker.
+     *                         All lines in between are replaced by a single row telling how many lines were omitted.
+     *                         Use <code>0</code> to show all lines.
+     */
+    public RenderOptions withMultilineElision(final long multilineElision) {
+        return new RenderOptions(this.withUnicode, this.withColors, multilineElision, this.tabWidth, this.width, this.contextLines);
+    }
+
+    /**
+     * @param tabWidth The number of columns between two tab stops, used to expand tabs in source lines
+     * @throws IllegalArgumentException if the width is not positive
+     */
+    public RenderOptions withTabWidth(final int tabWidth) {
+        if (tabWidth < 1)
+            throw new IllegalArgumentException("Tab width must be positive, but got " + tabWidth);
+        return new RenderOptions(this.withUnicode, this.withColors, this.multilineElision, tabWidth, this.width, this.contextLines);
+    }
+
+    /**
+     * @param width The maximum number of characters of a source line to show.
+     *              Longer lines are cut around their markers, and the parts which are not shown are replaced by an ellipsis.
+     *              Use <code>0</code> to always show whole lines.
+     */
+    public RenderOptions withWidth(final int width) {
+        return new RenderOptions(this.withUnicode, this.withColors, this.multilineElision, this.tabWidth, Math.max(0, width), this.contextLines);
+    }
+
+    /**
+     * @param contextLines The number of lines to show before and after each line with a marker.
+     *                     Context lines of nearby markers are merged, so that no line is shown twice.
+     */
+    public RenderOptions withContextLines(final int contextLines) {
+        return new RenderOptions(this.withUnicode, this.withColors, this.multilineElision, this.tabWidth, this.width, Math.max(0, contextLines));
+    }
+
+    public boolean isUnicode() {
+        return this.withUnicode;
+    }
+
+    public boolean isColored() {
+        return this.withColors;
+    }
+
+    public long getMultilineElision() {
+        return this.multilineElision;
+    }
+
+    public int getTabWidth() {
+        return this.tabWidth;
+    }
+
+    public int getWidth() {
+        return this.width;
+    }
+
+    public int getContextLines() {
+        return this.contextLines;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        RenderOptions that = (RenderOptions) o;
+        return withUnicode == that.withUnicode && withColors == that.withColors && multilineElision == that.multilineElision && tabWidth == that.tabWidth && width == that.width && contextLines == that.contextLines;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(withUnicode, withColors, multilineElision, tabWidth, width, contextLines);
+    }
+}
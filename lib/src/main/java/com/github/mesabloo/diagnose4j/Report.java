@@ -3,6 +3,8 @@ package com.github.mesabloo.diagnose4j;
 import com.github.mesabloo.diagnose4j.prettyprint.Doc;
 import com.github.mesabloo.diagnose4j.prettyprint.Document;
 import com.github.mesabloo.diagnose4j.report.Marker;
+import com.github.mesabloo.diagnose4j.source.LineIndex;
+import com.github.mesabloo.diagnose4j.source.SourceProvider;
 import com.github.tomaslanger.chalk.Ansi;
 
 import java.util.*;
@@ -26,15 +28,21 @@ public class Report<Msg extends Pretty<Msg>> {
     private final Msg msg;
 
     /**
-     * A map associating position with specific markers.
+     * All the markers of the report, sorted by line.
      */
-    private final Map<Position, Marker<Msg>> markers;
+    private final MarkerTable<Msg> markers;
 
     /**
      * Additional hints to output at the end of the report.
      */
     private final List<Msg> hints;
 
+    /**
+     * Markers grouped per file, along with whether each group is the first one, in the layout rendering works with.
+     * Only computed the first time the report is rendered (reports which are only filtered, written or encoded
+     * never need it), and then kept as it does not depend on rendering options.
+     */
+    private volatile List<Map.Entry<Boolean, List<Map.Entry<Position, Marker<Msg>>>>> groupedMarkers;
 
     /**
      * Creates a new error report.
@@ -48,12 +56,15 @@ public class Report<Msg extends Pretty<Msg>> {
      *           of markers (this way, first marker inserted = first marker displayed).
      */
     public Report(final boolean isError, final Msg message, final LinkedHashMap<Position, Marker<Msg>> markers, final List<Msg> hints) {
+        this(isError, message, MarkerTable.of(markers), new ArrayList<>(hints));
+    }
+
+    Report(final boolean isError, final Msg message, final MarkerTable<Msg> markers, final List<Msg> hints) {
         this.isError = isError;
         this.msg = message;
-        this.markers = new LinkedHashMap<>();
-        this.hints = new ArrayList<>(hints);
-
-        this.markers.putAll(markers);
+        this.markers = markers;
+        this.hints = hints;
+        this.groupedMarkers = null;
     }
 
     /**
@@ -65,23 +76,237 @@ public class Report<Msg extends Pretty<Msg>> {
         this(isError, message, markers, new ArrayList<>());
     }
 
+    /**
+     * Builds a report one marker at a time, without having to create an intermediate map of markers.
+     *
+     * <pre><code>
+     * final Report&lt;Msg&gt; report = new Report.Builder&lt;Msg&gt;(true, message)
+     *         .withMarker(position, new Marker.This&lt;&gt;(explanation))
+     *         .withHint(hint)
+     *         .build();
+     * </code></pre>
+     *
+     * @param <Msg>
+     */
+    public static final class Builder<Msg extends Pretty<Msg>> {
+        private final boolean isError;
+        private final Msg message;
+        private final List<Msg> hints;
+
+        private Position[] positions;
+        private Marker<Msg>[] markers;
+        private int size;
+        /**
+         * Where each position is in the arrays, so that adding a marker at the same position replaces the previous one.
+         * This is an open-addressing hash table of indices plus one (<code>0</code> being a free slot),
+         * kept at most half full.
+         */
+        private int[] indices;
+
+        /**
+         * @param isError Is the report for an error?
+         * @param message The message which should be output at the beginning
+         */
+        @SuppressWarnings("unchecked")
+        public Builder(final boolean isError, final Msg message) {
+            this.isError = isError;
+            this.message = message;
+            this.hints = new ArrayList<>();
+            this.positions = new Position[8];
+            this.markers = (Marker<Msg>[]) new Marker<?>[8];
+            this.size = 0;
+            this.indices = new int[16];
+        }
+
+        /**
+         * Adds a marker to the report.
+         * Markers are displayed in insertion order, and a marker at the same position as a previous one replaces it.
+         *
+         * @return The current builder
+         */
+        public Builder<Msg> withMarker(final Position position, final Marker<Msg> marker) {
+            final int slot = this.slotOf(position);
+            if (this.indices[slot] != 0) {
+                this.markers[this.indices[slot] - 1] = marker;
+                return this;
+            }
+
+            if (this.size == this.positions.length) {
+                this.positions = Arrays.copyOf(this.positions, 2 * this.size);
+                this.markers = Arrays.copyOf(this.markers, 2 * this.size);
+            }
+            this.positions[this.size] = position;
+            this.markers[this.size] = marker;
+            this.indices[slot] = ++this.size;
+            if (2 * this.size > this.indices.length)
+                this.rehash();
+            return this;
+        }
+
+        /**
+         * Adds a hint at the end of the report.
+         *
+         * @return The current builder
+         */
+        public Builder<Msg> withHint(final Msg hint) {
+            this.hints.add(hint);
+            return this;
+        }
+
+        /**
+         * @return A new report with all the markers and hints added until now.
+         *         The builder may still be used afterwards, without affecting the report.
+         */
+        public Report<Msg> build() {
+            return new Report<>(this.isError, this.message, new MarkerTable<>(this.positions, this.markers, this.size), new ArrayList<>(this.hints));
+        }
+
+        /**
+         * @return The slot of the given position in the table of indices, or the free slot where it should go
+         */
+        private int slotOf(final Position position) {
+            final int mask = this.indices.length - 1;
+            int slot = spread(position.hashCode()) & mask;
+            while (this.indices[slot] != 0 && !this.positions[this.indices[slot] - 1].equals(position)) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private void rehash() {
+            final int[] indices = new int[2 * this.indices.length];
+            final int mask = indices.length - 1;
+            for (int i = 0; i < this.size; ++i) {
+                int slot = spread(this.positions[i].hashCode()) & mask;
+                while (indices[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                indices[slot] = i + 1;
+            }
+            this.indices = indices;
+        }
+
+        private static int spread(final int hash) {
+            return hash ^ (hash >>> 16);
+        }
+    }
+
+    /**
+     * @return The names of all the files referenced by the markers of this report, in alphabetical order
+     */
+    SortedSet<String> files() {
+        return this.markers.files();
+    }
+
+    boolean isError() {
+        return this.isError;
+    }
+
+    Msg message() {
+        return this.msg;
+    }
+
+    /**
+     * @return The markers of this report, sorted by line
+     */
+    MarkerTable<Msg> markers() {
+        return this.markers;
+    }
+
+    List<Msg> hints() {
+        return this.hints;
+    }
+
+    /**
+     * @return The position of the first {@link Marker.This} marker (or of the first marker, if there is none),
+     *         or <code>null</code> if the report has no marker
+     */
+    Position primaryPosition() {
+        for (int i = 0; i < this.markers.size(); ++i) {
+            if (this.markers.marker(i) instanceof Marker.This)
+                return this.markers.position(i);
+        }
+        return this.markers.isEmpty() ? null : this.markers.position(0);
+    }
+
+    /**
+     * @return The name of the kind of a marker, in lowercase
+     */
+    static String kind(final Marker<?> marker) {
+        if (marker instanceof Marker.This)
+            return "this";
+        if (marker instanceof Marker.Where)
+            return "where";
+        return "maybe";
+    }
+
+    /**
+     * Converts the positions of all markers given by offsets to lines and columns.
+     *
+     * @param indices Fetches the line index of a file, along with the largest offset it must be able to convert
+     * @return A report where no position is given by offsets (the current report if there was none)
+     */
+    Report<Msg> resolve(final BiFunction<String, Long, LineIndex> indices) {
+        if (!this.markers.hasOffsets())
+            return this;
+
+        return new Report<>(this.isError, this.msg, this.markers.resolve(indices), this.hints);
+    }
+
+    /**
+     * Renders the report using files which have already been split into lines, with default options.
+     *
+     * @see Report#pretty(SourceProvider, RenderOptions)
+     */
     public Document pretty(final Map<String, List<String>> files, final boolean withUnicode) {
-        Document doc = new Document();
+        return this.pretty(SourceProvider.of(files), RenderOptions.defaults().withUnicode(withUnicode));
+    }
 
-        final List<Map.Entry<Position, Marker<Msg>>> sortedMarkers = this.markers
-                .entrySet()
-                .stream()
-                .sorted(Comparator.comparingLong(e -> e.getKey().beginning_line))
-                .collect(Collectors.toList());
-        // sort markers to have the first lines of the report at the beginning
+    /**
+     * Renders the report as a {@link Document}, using known line indices to resolve markers given by offsets.
+     *
+     * @param sources Where to fetch the lines shown in the report
+     * @param options How to render the report
+     * @param indices Fetches the line index of a file, only called for files where some markers are given by offsets
+     *                (for example {@link com.github.mesabloo.diagnose4j.source.SourceFile#lineIndex()})
+     * @return The rendered report
+     * @see Report#pretty(SourceProvider, RenderOptions)
+     */
+    public Document pretty(final SourceProvider sources, final RenderOptions options, final Function<String, LineIndex> indices) {
+        return this.resolve((file, offset) -> indices.apply(file)).pretty(sources, options);
+    }
 
-        final long maxLineNumberLength = Optional.ofNullable(sortedMarkers.isEmpty() ? null : sortedMarkers.get(sortedMarkers.size() - 1))
-                .map(pos -> Long.toString(pos.getKey().ending_line))
-                .map(s -> Math.max(3, s.length()))
-                .orElse(3);
-        // line numbers take at least 3 characters in width
+    /**
+     * Renders the report as a {@link Document}.
+     *
+     * The report is not modified, and no global state is involved, so a report can be rendered by several threads at once.
+     *
+     * Markers given by offsets are resolved by fetching the lines of their file from its beginning,
+     * up to the line containing the largest offset.
+     * Callers rendering many reports of the same files should rather give line indices which they keep between calls,
+     * with {@link Report#pretty(SourceProvider, RenderOptions, Function)}.
+     *
+     * @param sources Where to fetch the lines shown in the report.
+     *                Only lines of files referenced by the markers of the report are requested.
+     * @param options How to render the report
+     * @return The rendered report
+     */
+    public Document pretty(final SourceProvider sources, final RenderOptions options) {
+        if (this.markers.hasOffsets()) {
+            return this.resolve((file, offset) -> LineIndex.of(line -> sources.line(file, line), offset))
+                    .pretty(sources, options);
+        }
+
+        final boolean withUnicode = options.isUnicode();
+        final long multilineElision = options.getMultilineElision();
+        final int tabWidth = options.getTabWidth();
+        final int width = options.getWidth();
+        final int contextLines = options.getContextLines();
+
+        Document doc = new Document();
 
-        final List<Map.Entry<Boolean, List<Map.Entry<Position, Marker<Msg>>>>> groupedMarkers = this.groupMarkersPerFile(sortedMarkers);
+        final long maxLineNumberLength = Math.max(3, Long.toString(this.lastShownLine(sources, contextLines)).length());
+        // line numbers take at least 3 characters in width
 
         final Doc header = new Doc(isError ? "[error]" : "[warning]")
                 .colors(isError ? Ansi.Color.RED : Ansi.Color.YELLOW, null, Ansi.Modifier.BOLD);
@@ -106,9 +331,9 @@ public class Report<Msg extends Pretty<Msg>> {
                 .append(Doc.space())
                 .appendDoc(this.msg.pretty().aligned());
 
-        for (final Map.Entry<Boolean, List<Map.Entry<Position, Marker<Msg>>>> entry : groupedMarkers) {
+        for (final Map.Entry<Boolean, List<Map.Entry<Position, Marker<Msg>>>> entry : this.groupedMarkers()) {
             doc = doc
-                    .appendDoc(this.prettyAllSubReports(files, withUnicode, isError, maxLineNumberLength, entry.getKey(), entry.getValue()));
+                    .appendDoc(this.prettyAllSubReports(sources, withUnicode, isError, maxLineNumberLength, multilineElision, tabWidth, width, contextLines, entry.getKey(), entry.getValue()));
         }
 
         // (5)
@@ -133,25 +358,46 @@ public class Report<Msg extends Pretty<Msg>> {
         return doc;
     }
 
-    private List<Map.Entry<Boolean, List<Map.Entry<Position, Marker<Msg>>>>> groupMarkersPerFile(
-            List<Map.Entry<Position, Marker<Msg>>> sortedMarkers
-    ) {
-        final LinkedHashMap<String, List<Map.Entry<Position, Marker<Msg>>>> markersPerFile = new LinkedHashMap<>();
-
-        for (final Map.Entry<Position, Marker<Msg>> entry : sortedMarkers) {
-            final Position pos = entry.getKey();
-
-            final List<Map.Entry<Position, Marker<Msg>>> markers;
-            if (markersPerFile.containsKey(pos.file)) {
-                markers = markersPerFile.get(pos.file);
-            } else {
-                markers = new ArrayList<>();
+    /**
+     * Finds the greatest line number shown in the report, which sets the width of the gutter.
+     *
+     * The last line of every marker is always shown (it is never elided), so the greatest line shown in a file
+     * is the greatest last line of its markers, followed by as many context lines as the file still has.
+     *
+     * @return The greatest line number shown, or <code>0</code> if the report has no marker
+     */
+    private long lastShownLine(final SourceProvider sources, final int contextLines) {
+        long lastShown = 0;
+        for (final Map.Entry<Boolean, List<Map.Entry<Position, Marker<Msg>>>> group : this.groupedMarkers()) {
+            final String file = group.getValue().get(0).getKey().file();
+
+            long last = 0;
+            for (final Map.Entry<Position, Marker<Msg>> entry : group.getValue()) {
+                last = Math.max(last, entry.getKey().ending_line);
+            }
+            final long lastMarked = last;
+            while (last < lastMarked + contextLines && sources.line(file, last + 1).isPresent()) {
+                ++last;
             }
-            markers.add(entry);
 
-            markersPerFile.put(pos.file, markers);
+            lastShown = Math.max(lastShown, last);
         }
+        return lastShown;
+    }
+
+    private List<Map.Entry<Boolean, List<Map.Entry<Position, Marker<Msg>>>>> groupedMarkers() {
+        List<Map.Entry<Boolean, List<Map.Entry<Position, Marker<Msg>>>>> grouped = this.groupedMarkers;
+        if (grouped == null) {
+            grouped = this.groupMarkersPerFile(this.markers);
+            this.groupedMarkers = grouped;
+            // grouping twice in case of a race is harmless, as both results are identical
+        }
+        return grouped;
+    }
 
+    private List<Map.Entry<Boolean, List<Map.Entry<Position, Marker<Msg>>>>> groupMarkersPerFile(
+            final MarkerTable<Msg> sortedMarkers
+    ) {
         Comparator<List<Map.Entry<Position, Marker<Msg>>>> putThisAtTop = (e1, e2) -> {
             if (e1.stream().anyMatch(e -> e.getValue() instanceof Marker.This))
                 return -1;
@@ -162,11 +408,11 @@ public class Report<Msg extends Pretty<Msg>> {
         };
 
         final AtomicBoolean isFirst = new AtomicBoolean(true);
-        return markersPerFile.values()
+        return sortedMarkers.groupPerFile()
                 .stream()
                 .sorted(putThisAtTop)
                 .map(entries -> new AbstractMap.SimpleEntry<>(isFirst.getAndSet(false), entries))
-                .collect(Collectors.toList());
+                .collect(Collectors.collectingAndThen(Collectors.toList(), Collections::unmodifiableList));
     }
 
     /////////////////////////////////////
@@ -174,10 +420,14 @@ public class Report<Msg extends Pretty<Msg>> {
     /////////////////////////////////////
 
     private Document prettyAllSubReports(
-            final Map<String, List<String>> files,
+            final SourceProvider sources,
             final boolean withUnicode,
             final boolean isError,
             final long maxLineNumberLength,
+            final long multilineElision,
+            final int tabWidth,
+            final int width,
+            final int contextLines,
             final boolean isFirst,
             final List<Map.Entry<Position, Marker<Msg>>> markers
     ) {
@@ -186,11 +436,6 @@ public class Report<Msg extends Pretty<Msg>> {
         this.splitInlineMarkers(markers, inlineMarkers, multilineMarkers);
         // split markers to separate inline and multiline markers
 
-        final List<Map.Entry<Long, List<Map.Entry<Position, Marker<Msg>>>>> sortedMarkerPerLine = inlineMarkers.entrySet()
-                .stream()
-                .sorted(Map.Entry.comparingByKey())
-                .collect(Collectors.toList());
-
         final Position reportFile = markers.stream()
                 .sorted(Map.Entry.comparingByValue())
                 .map(Map.Entry::getKey)
@@ -198,12 +443,16 @@ public class Report<Msg extends Pretty<Msg>> {
                 .orElseGet(Position::def);
         // retrieve the report file from the first `This` marker (ideally, there is only one in each report)
 
-        final LongStream allLineNumbersInReport = LongStream.concat(
-                sortedMarkerPerLine.stream()
-                        .mapToLong(Map.Entry::getKey),
-                multilineMarkers.stream()
-                        .flatMapToLong(entry -> LongStream.rangeClosed(entry.getKey().beginning_line, entry.getKey().ending_line)));
+        final String file = markers.get(0).getKey().file();
+        // markers are grouped per file, so they are all in the same file
+
+        final Stream<Map.Entry<Long, Long>> allMarkedLineNumbers = this.rowsOfSubReport(inlineMarkers.keySet(), multilineMarkers, multilineElision);
         // we need to record all line numbers in the report to show them all
+        // (each row is a range of lines, which is only longer than one line when lines are omitted)
+
+        final Stream<Map.Entry<Long, Long>> allLineNumbersInReport = contextLines > 0
+                ? this.withContextLines(sources, file, contextLines, allMarkedLineNumbers)
+                : allMarkedLineNumbers;
 
         Document fileMarker = new Document();
         if (isFirst) {
@@ -234,19 +483,27 @@ public class Report<Msg extends Pretty<Msg>> {
                 .append(Doc.space())
                 .appendDoc(this.pipePrefix(maxLineNumberLength, withUnicode))
                 // (4)
-                .appendDoc(this.prettyAllLines(files, withUnicode, isError, maxLineNumberLength, sortedMarkerPerLine, multilineMarkers, allLineNumbersInReport));
+                .appendDoc(this.prettyAllLines(sources, file, withUnicode, isError, maxLineNumberLength, tabWidth, width, new MarkerIndex<>(inlineMarkers, multilineMarkers), multilineMarkers, allLineNumbersInReport));
     }
 
     private Document prettyAllLines(
-            final Map<String, List<String>> files,
+            final SourceProvider sources,
+            final String file,
             final boolean withUnicode,
             final boolean isError,
             final long maxLineNumberLength,
-            final List<Map.Entry<Long, List<Map.Entry<Position, Marker<Msg>>>>> inlineMarkers,
+            final int tabWidth,
+            final int width,
+            final MarkerIndex<Msg> index,
             final List<Map.Entry<Position, Marker<Msg>>> multilineMarkers,
-            final LongStream allLineNumbersInReport
+            final Stream<Map.Entry<Long, Long>> allLineNumbersInReport
     ) {
-        Document doc = allLineNumbersInReport.mapToObj(line -> {
+        Document doc = allLineNumbersInReport.map(row -> {
+                    if (!row.getKey().equals(row.getValue())) {
+                        return this.prettyOmittedLines(withUnicode, isError, maxLineNumberLength, index, row.getKey(), row.getValue());
+                    }
+                    final long line = row.getKey();
+
                     /*
                     A line of code is composed of:
                     (1)    <line> | <source code>
@@ -256,19 +513,11 @@ public class Report<Msg extends Pretty<Msg>> {
                     Multiline markers may also take an additional 2 characters-wide space after the bar
                     */
 
-                    final List<Map.Entry<Position, Marker<Msg>>> allInlineMarkersInLine = inlineMarkers.stream()
-                            .filter(e -> e.getKey() == line)
-                            .flatMap(e -> e.getValue().stream())
-                            .collect(Collectors.toList());
-                    final List<Map.Entry<Position, Marker<Msg>>> allMultilineMarkersInLine = multilineMarkers.stream()
-                            .filter(e -> e.getKey().beginning_line == line || e.getKey().ending_line == line)
-                            .collect(Collectors.toList());
-                    final List<Map.Entry<Position, Marker<Msg>>> allMultilineMarkersSpanningLine = multilineMarkers.stream()
-                            .filter(e -> e.getKey().beginning_line < line && e.getKey().ending_line > line)
-                            .collect(Collectors.toList());
+                    final List<Map.Entry<Position, Marker<Msg>>> allInlineMarkersInLine = index.inlineMarkersInLine(line);
+                    final List<Map.Entry<Position, Marker<Msg>>> allMultilineMarkersInLine = index.multilineMarkersInLine(line);
+                    final List<Map.Entry<Position, Marker<Msg>>> allMultilineMarkersSpanningLine = index.multilineMarkersSpanningLine(line);
 
-                    final boolean inSpanOfMultiline = multilineMarkers.stream()
-                            .anyMatch(e -> e.getKey().beginning_line <= line && e.getKey().ending_line >= line);
+                    final boolean inSpanOfMultiline = index.inSpanOfMultiline(line);
 
                     final Ansi.Color colorOfFirstMultilineMarker = Stream.concat(allMultilineMarkersInLine.stream(), allMultilineMarkersSpanningLine.stream())
                             .findFirst()
@@ -324,15 +573,33 @@ public class Report<Msg extends Pretty<Msg>> {
                             allMultilineMarkersSpanningLine.stream()
                     ).collect(Collectors.toList());
 
+                    final Optional<String> wholeLineOfCode = sources.line(file, line);
+                    final DisplayWidths wholeLineWidths = wholeLineOfCode
+                            .map(code -> DisplayWidths.of(code, tabWidth))
+                            .orElseGet(DisplayWidths::identity);
+                    // computed once for the whole line, so that finding where markers are displayed is cheap
+
+                    final Viewport viewport = wholeLineOfCode
+                            .map(code -> Viewport.of(code, wholeLineWidths, allMarkersInLine, line, width, withUnicode))
+                            .orElse(null);
+                    // only show the part of a long line around its markers, moving markers accordingly
+
+                    final Optional<String> lineOfCode = viewport == null ? wholeLineOfCode : Optional.of(viewport.code());
+                    final List<Map.Entry<Position, Marker<Msg>>> allMarkersInView = viewport == null ? allMarkersInLine : viewport.shift(allMarkersInLine);
+                    final List<Map.Entry<Position, Marker<Msg>>> allInlineMarkersInView = viewport == null ? allInlineMarkersInLine : viewport.shift(allInlineMarkersInLine);
+
+                    final DisplayWidths widths = viewport == null ? wholeLineWidths : DisplayWidths.of(viewport.code(), tabWidth);
+                    // the window has no tab left, but may still contain wide characters
+
                     return new Document()
                             .append(Doc.line())
                             // (1)
                             .appendDoc(this.linePrefix(maxLineNumberLength, line, withUnicode))
                             .append(Doc.space())
                             .appendDoc(additionalPrefix)
-                            .appendDoc(this.getLine(files, allMarkersInLine, line, isError))
+                            .appendDoc(this.getLine(lineOfCode, widths, allMarkersInView, line, isError))
                             // (2)
-                            .appendDoc(this.showAllMarkersInLine(!multilineMarkers.isEmpty(), inSpanOfMultiline, colorOfFirstMultilineMarker, withUnicode, isError, maxLineNumberLength, allInlineMarkersInLine));
+                            .appendDoc(this.showAllMarkersInLine(!multilineMarkers.isEmpty(), inSpanOfMultiline, colorOfFirstMultilineMarker, withUnicode, isError, maxLineNumberLength, this.inDisplayColumns(allInlineMarkersInView, widths)));
                 })
                 .reduce(new Document(), Document::appendDoc);
 
@@ -371,39 +638,223 @@ public class Report<Msg extends Pretty<Msg>> {
         return doc;
     }
 
+    /**
+     * Adds lines of context around every line shown in a sub-report.
+     *
+     * Context lines are only fetched if they are not already shown nor in a range of omitted lines,
+     * and stop at the end of the file.
+     *
+     * @param file         The file of the sub-report
+     * @param contextLines The number of lines to add before and after each shown line
+     * @param rows         The rows of the sub-report, as ranges of lines
+     * @return All rows, sorted by line, where each line appears at most once
+     */
+    private Stream<Map.Entry<Long, Long>> withContextLines(
+            final SourceProvider sources,
+            final String file,
+            final long contextLines,
+            final Stream<Map.Entry<Long, Long>> rows
+    ) {
+        final TreeMap<Long, Long> merged = new TreeMap<>();
+        final TreeMap<Long, Long> omitted = new TreeMap<>();
+        final List<Long> shownLines = new ArrayList<>();
+        rows.forEach(row -> {
+            merged.put(row.getKey(), row.getValue());
+            if (row.getKey().equals(row.getValue()))
+                shownLines.add(row.getKey());
+            else
+                omitted.put(row.getKey(), row.getValue());
+        });
+        // omitted ranges are kept apart, as shown lines may sit between two of them
+
+        for (final long line : shownLines) {
+            for (long n = Math.max(1, line - contextLines); n <= line + contextLines; ++n) {
+                if (merged.containsKey(n))
+                    continue;
+                // the line is already shown
+
+                final Map.Entry<Long, Long> gap = omitted.floorEntry(n);
+                if (gap != null && gap.getValue() >= n)
+                    continue;
+                // the line was omitted on purpose
+
+                if (!sources.line(file, n).isPresent()) {
+                    if (n > line)
+                        break;
+                    continue;
+                }
+                merged.put(n, n);
+            }
+        }
+
+        return merged.entrySet()
+                .stream()
+                .map(row -> new AbstractMap.SimpleEntry<>(row.getKey(), row.getValue()));
+    }
+
+    /**
+     * Computes all the rows needed to show the markers of a sub-report, sorted by line.
+     *
+     * All lines with inline markers are shown, as well as the lines of multiline markers.
+     * If a multiline marker spans more than <code>2 * multilineElision + 1</code> lines, only its first and last
+     * <code>multilineElision</code> lines are kept, and the lines in between which are not shown for another reason
+     * (an inline marker, or another multiline marker starting or ending on them) are collapsed into rows of omitted lines.
+     *
+     * @param inlineLines      The lines which contain inline markers
+     * @param multilineMarkers The multiline markers of the sub-report
+     * @param multilineElision The number of lines to keep at each end of multiline markers, or <code>0</code> to keep all of them
+     * @return A stream of ranges of lines, where single lines are ranges with the same start and end
+     */
+    private Stream<Map.Entry<Long, Long>> rowsOfSubReport(
+            final Set<Long> inlineLines,
+            final List<Map.Entry<Position, Marker<Msg>>> multilineMarkers,
+            final long multilineElision
+    ) {
+        final LongStream.Builder marked = LongStream.builder();
+        inlineLines.forEach(marked::add);
+        for (final Map.Entry<Position, Marker<Msg>> entry : multilineMarkers) {
+            final long first = entry.getKey().beginning_line;
+            final long last = entry.getKey().ending_line;
+
+            if (multilineElision <= 0 || last - first + 1 <= 2 * multilineElision + 1) {
+                for (long line = first; line <= last; ++line) {
+                    marked.add(line);
+                }
+            } else {
+                for (long line = first; line < first + multilineElision; ++line) {
+                    marked.add(line);
+                }
+                for (long line = last - multilineElision + 1; line <= last; ++line) {
+                    marked.add(line);
+                }
+            }
+        }
+        final long[] shown = marked.build().sorted().distinct().toArray();
+
+        final List<Map.Entry<Long, Long>> rows = new ArrayList<>(shown.length);
+        for (int i = 0; i < shown.length; ++i) {
+            if (i > 0 && shown[i] > shown[i - 1] + 1 && inSpanOfAny(multilineMarkers, shown[i - 1] + 1))
+                rows.add(new AbstractMap.SimpleEntry<>(shown[i - 1] + 1, shown[i] - 1));
+            // both ends of every multiline marker are shown, so a gap containing a line in the span of a marker
+            // is entirely in the span of that marker, and only contains elided lines
+
+            rows.add(new AbstractMap.SimpleEntry<>(shown[i], shown[i]));
+        }
+        return rows.stream();
+    }
+
+    /**
+     * @return Is the line between the first and last line (both included) of one of the given multiline markers?
+     */
+    private static <Msg extends Pretty<Msg>> boolean inSpanOfAny(final List<Map.Entry<Position, Marker<Msg>>> multilineMarkers, final long line) {
+        for (final Map.Entry<Position, Marker<Msg>> entry : multilineMarkers) {
+            if (entry.getKey().beginning_line <= line && line <= entry.getKey().ending_line)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Creates a row standing for lines hidden in the span of a multiline marker.
+     *
+     * This follows this format:
+     * <ul>
+     *     <li>With Unicode: <code>"␣␣␣␣␣•␣│␣␣… 12 lines omitted"</code></li>
+     *     <li>With ASCII: <code>"␣␣␣␣␣:␣|␣␣... 12 lines omitted"</code></li>
+     * </ul>
+     *
+     * @param first The first omitted line
+     * @param last  The last omitted line
+     */
+    private Document prettyOmittedLines(
+            final boolean withUnicode,
+            final boolean isError,
+            final long maxLineNumberLength,
+            final MarkerIndex<Msg> index,
+            final long first,
+            final long last
+    ) {
+        final Ansi.Color colorOfFirstMultilineMarker = Stream.concat(index.multilineMarkersInLine(first).stream(), index.multilineMarkersSpanningLine(first).stream())
+                .findFirst()
+                .map(e -> e.getValue().markerColor(isError))
+                .orElse(null);
+
+        return new Document()
+                .append(Doc.line())
+                .append(Doc.space())
+                .appendDoc(this.dotPrefix(maxLineNumberLength, withUnicode))
+                .append(Doc.space())
+                .append(new Doc(withUnicode ? "│  " : "|  ").colors(colorOfFirstMultilineMarker, null))
+                .append(new Doc((withUnicode ? "… " : "... ") + (last - first + 1) + " lines omitted").colors(Ansi.Color.GRAY, null));
+    }
+
     private Document getLine(
-            final Map<String, List<String>> files,
+            final Optional<String> lineOfCode,
+            final DisplayWidths widths,
             final List<Map.Entry<Position, Marker<Msg>>> allMarkersInLine,
             final long line,
             final boolean isError
     ) {
-        final Optional<String> lineOfCode = Optional.ofNullable(allMarkersInLine.isEmpty() ? null : allMarkersInLine.get(0))
-                .flatMap(entry -> Optional.ofNullable(files.get(entry.getKey().file)))
-                .flatMap(lines -> Optional.ofNullable(lines.size() >= line - 1 ? lines.get((int) line - 1) : null));
-
         if (lineOfCode.isPresent()) {
             final String code = lineOfCode.get();
+            final long endOfLine = code.length() + 1;
+
+            // every marker highlights a single range of columns [start, end) on this line,
+            // which is turned into two events: the marker becomes active at its start, and inactive at its end
+            // (each event packs its column in the high bits, and the index of its marker and whether it starts in the low bits)
+            final long[] events = new long[2 * allMarkersInLine.size()];
+            int eventCount = 0;
+            for (int i = 0; i < allMarkersInLine.size(); ++i) {
+                final Position pos = allMarkersInLine.get(i).getKey();
+
+                long start;
+                long end;
+                if (pos.beginning_line == pos.ending_line) {
+                    start = pos.beginning_column;
+                    end = pos.ending_column;
+                } else if (pos.beginning_line == line) {
+                    start = pos.beginning_column;
+                    end = endOfLine;
+                } else if (pos.ending_line == line) {
+                    start = 1;
+                    end = pos.ending_column;
+                } else {
+                    continue;
+                }
+                start = Math.max(1, Math.min(start, endOfLine));
+                end = Math.max(1, Math.min(end, endOfLine));
+                if (start >= end)
+                    continue;
+                // empty ranges never highlight anything
+
+                events[eventCount++] = start << 32 | (long) i << 1 | 1;
+                events[eventCount++] = end << 32 | (long) i << 1;
+            }
+            Arrays.sort(events, 0, eventCount);
 
             Document doc = new Document();
-            for (int i = 1; i <= code.length(); ++i) {
-                final int n = i;
-
-                final Optional<Ansi.Color> color = allMarkersInLine.stream()
-                        .filter(entry -> {
-                            final Position pos = entry.getKey();
-                            if (pos.beginning_line == pos.ending_line) {
-                                return n >= pos.beginning_column && n < pos.ending_column;
-                            } else {
-                                return (pos.beginning_line == line && n >= pos.beginning_column)
-                                        || (pos.ending_line == line && n < pos.ending_column);
-                            }
-                        })
-                        .findFirst()
-                        .map(Map.Entry::getValue)
-                        .map(m -> m.markerColor(isError));
+            final BitSet active = new BitSet(allMarkersInLine.size());
+            long runStart = 1;
+            Ansi.Color runColor = null;
+            // sweep over all events once, merging consecutive segments which share the same color into a single run
+            for (int e = 0; e < eventCount; ) {
+                final long column = events[e] >>> 32;
+                for (; e < eventCount && events[e] >>> 32 == column; ++e) {
+                    final int marker = (int) ((events[e] & 0xFFFFFFFFL) >>> 1);
+                    active.set(marker, (events[e] & 1) != 0);
+                }
 
-                doc = doc.append(new Doc(code.charAt(n - 1)).colors(color.orElse(null), null, color.isPresent() ? Ansi.Modifier.BOLD : null));
+                final int first = active.nextSetBit(0);
+                final Ansi.Color color = first < 0 ? null : allMarkersInLine.get(first).getValue().markerColor(isError);
+                // the first active marker gives its color to the segment starting at this column
+
+                if (color != runColor) {
+                    doc = this.appendRun(doc, code, widths, runStart, column, runColor);
+                    runStart = column;
+                    runColor = color;
+                }
             }
+            doc = this.appendRun(doc, code, widths, runStart, endOfLine, runColor);
 
             return doc;
         } else {
@@ -412,6 +863,44 @@ public class Report<Msg extends Pretty<Msg>> {
         }
     }
 
+    /**
+     * Appends a run of characters of a source line, highlighted in bold with the given color if there is one.
+     *
+     * @param doc    The document to append the run to
+     * @param code   The whole source line
+     * @param widths The display widths of the characters of the line, used to expand tabs
+     * @param start  The column (starting at 1) where the run starts
+     * @param end    The column (excluded) where the run ends
+     * @param color  The color of the run, or <code>null</code> if it is not highlighted
+     * @return The given document, with the run appended if it is not empty
+     */
+    private Document appendRun(final Document doc, final String code, final DisplayWidths widths, final long start, final long end, final Ansi.Color color) {
+        if (start >= end)
+            return doc;
+
+        return doc.append(new Doc(widths.substring(code, (int) start, (int) end)).colors(color, null, color != null ? Ansi.Modifier.BOLD : null));
+    }
+
+    /**
+     * Converts the columns of inline markers to the columns where they are displayed.
+     *
+     * @return The given markers, at new positions if some characters in the line do not take exactly one column
+     */
+    private List<Map.Entry<Position, Marker<Msg>>> inDisplayColumns(
+            final List<Map.Entry<Position, Marker<Msg>>> markers,
+            final DisplayWidths widths
+    ) {
+        if (widths.isIdentity())
+            return markers;
+
+        return markers.stream()
+                .map(entry -> {
+                    final Position pos = entry.getKey();
+                    return new AbstractMap.SimpleEntry<>(pos.withColumns(widths.column(pos.beginning_column), widths.column(pos.ending_column)), entry.getValue());
+                })
+                .collect(Collectors.toList());
+    }
+
     private Document showAllMarkersInLine(
             final boolean hasMultilines,
             final boolean inSpanOfMultiline,
@@ -446,18 +935,36 @@ public class Report<Msg extends Pretty<Msg>> {
                     .append(Doc.space())
                     .appendDoc(specialPrefix);
 
+            // as in getLine, every marker covers the columns [start, end), turned into two events swept once in order of columns
+            final long[] events = new long[2 * allInlineMarkersInLine.size()];
+            int eventCount = 0;
+            for (int i = 0; i < allInlineMarkersInLine.size(); ++i) {
+                final Position pos = allInlineMarkersInLine.get(i).getKey();
+                final long start = Math.max(1, pos.beginning_column);
+                final long end = Math.max(1, pos.ending_column);
+                if (start >= end)
+                    continue;
+                // empty markers never cover any column
+
+                events[eventCount++] = start << 32 | (long) i << 1 | 1;
+                events[eventCount++] = end << 32 | (long) i << 1;
+            }
+            Arrays.sort(events, 0, eventCount);
+
+            final BitSet active = new BitSet(allInlineMarkersInLine.size());
+            int event = 0;
             for (long n = 1; n <= maxMarkerColumn; ++n) {
-                final long n_ = n;
+                for (; event < eventCount && events[event] >>> 32 == n; ++event) {
+                    active.set((int) ((events[event] & 0xFFFFFFFFL) >>> 1), (events[event] & 1) != 0);
+                }
 
-                final List<Map.Entry<Position, Marker<Msg>>> allMarkers = allInlineMarkersInLine.stream()
-                        .filter(entry -> n_ >= entry.getKey().beginning_column && n_ < entry.getKey().ending_column)
-                        .collect(Collectors.toList());
-                // only consider markers which span onto the current column
+                final int first = active.nextSetBit(0);
+                // only the first marker spanning onto the current column is shown
 
-                if (allMarkers.isEmpty()) {
+                if (first < 0) {
                     doc = doc.append(Doc.space());
                 } else {
-                    final Map.Entry<Position, Marker<Msg>> entry = allMarkers.get(0);
+                    final Map.Entry<Position, Marker<Msg>> entry = allInlineMarkersInLine.get(first);
                     final Position pos = entry.getKey();
                     final Marker<Msg> marker = entry.getValue();
 
@@ -560,7 +1067,7 @@ public class Report<Msg extends Pretty<Msg>> {
                 }
 
                 final List<Map.Entry<Position, Doc>> pipesBeforePreRender = new ArrayList<>(pipesBefore.stream()
-                        .collect(Collectors.toMap(Map.Entry::getKey, e -> new Doc(withUnicode ? "│" : "|").colors(e.getValue().markerColor(isError), null)))
+                        .collect(Collectors.toMap(Map.Entry::getKey, e -> new Doc(withUnicode ? "│" : "|").colors(e.getValue().markerColor(isError), null), (a, b) -> a))
                         .entrySet());
                 // pre-render pipes which are before because they will be shown
 
@@ -636,13 +1143,13 @@ public class Report<Msg extends Pretty<Msg>> {
                 multilineMarkers.add(0, entry);
             else {
                 List<Map.Entry<Position, Marker<Msg>>> list;
-                if (inlineMarkers.containsKey(pos.beginning_line)) {
-                    list = inlineMarkers.get(pos.beginning_line);
+                if (inlineMarkers.containsKey((long) pos.beginning_line)) {
+                    list = inlineMarkers.get((long) pos.beginning_line);
                 } else {
                     list = new ArrayList<>();
                 }
                 list.add(entry);
-                inlineMarkers.put(pos.beginning_line, list);
+                inlineMarkers.put((long) pos.beginning_line, list);
             }
         }
     }
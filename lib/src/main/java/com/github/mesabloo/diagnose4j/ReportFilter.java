@@ -0,0 +1,208 @@
+package com.github.mesabloo.diagnose4j;
+
+import com.github.mesabloo.diagnose4j.prettyprint.Doc;
+import com.github.mesabloo.diagnose4j.prettyprint.Document;
+import com.github.tomaslanger.chalk.Ansi;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Decides which reports to print under some {@link ReportLimits}, and counts the ones which were suppressed.
+ *
+ * A filter is used for a single printing of reports, which must all be given in the order in which they are printed.
+ *
+ * @param <Msg>
+ */
+final class ReportFilter<Msg extends Pretty<Msg>> {
+    private final ReportLimits limits;
+
+    /**
+     * The digests of all reports accepted or dropped as duplicates, so that memory used per report does not depend
+     * on its size. This is an open-addressing hash table of 128-bit digests stored as pairs of longs, kept at most
+     * half full, where the lowest bit of every digest is set so that free slots are the ones holding zeros.
+     */
+    private long[] seen;
+    private int seenCount;
+    private final MessageDigest digest;
+    private final Map<String, Integer> perFile;
+    private final Map<String, Integer> perMessage;
+    private final StringBuilder scratch;
+    private int printed;
+
+    private int duplicates;
+    private int overTotal;
+    private int overFile;
+    private int overMessage;
+
+    ReportFilter(final ReportLimits limits) {
+        this.limits = limits;
+        this.seen = new long[2 * 16];
+        this.seenCount = 0;
+        try {
+            this.digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+            // every Java platform is required to support SHA-256
+        }
+        this.perFile = new HashMap<>();
+        this.perMessage = new HashMap<>();
+        this.scratch = new StringBuilder();
+        this.printed = 0;
+    }
+
+    /**
+     * @return Whether the report should be printed.
+     *         If so, it is counted towards the limits, otherwise it is counted as suppressed.
+     */
+    boolean accept(final Report<Msg> report) {
+        if (this.limits.isDeduplicating() && !this.addDigest(this.key(report))) {
+            ++this.duplicates;
+            return false;
+        }
+
+        if (this.limits.getMaxReports() > 0 && this.printed >= this.limits.getMaxReports()) {
+            ++this.overTotal;
+            return false;
+        }
+
+        final Position primary = this.limits.getMaxReportsPerFile() > 0 ? report.primaryPosition() : null;
+        final String file = primary == null ? null : primary.file();
+        if (file != null && this.perFile.getOrDefault(file, 0) >= this.limits.getMaxReportsPerFile()) {
+            ++this.overFile;
+            return false;
+        }
+
+        final String message = this.limits.getMaxReportsPerMessage() > 0 ? this.text(report.message()) : null;
+        if (message != null && this.perMessage.getOrDefault(message, 0) >= this.limits.getMaxReportsPerMessage()) {
+            ++this.overMessage;
+            return false;
+        }
+
+        ++this.printed;
+        if (file != null)
+            this.perFile.merge(file, 1, Integer::sum);
+        if (message != null)
+            this.perMessage.merge(message, 1, Integer::sum);
+        return true;
+    }
+
+    /**
+     * @return A line telling how many reports were suppressed, or <code>null</code> if none was
+     */
+    Document summary() {
+        final int suppressed = this.duplicates + this.overTotal + this.overFile + this.overMessage;
+        if (suppressed == 0)
+            return null;
+
+        final List<String> reasons = new ArrayList<>();
+        if (this.duplicates > 0)
+            reasons.add(this.duplicates + (this.duplicates == 1 ? " duplicate" : " duplicates"));
+        if (this.overFile > 0)
+            reasons.add(this.overFile + " over the limit per file");
+        if (this.overMessage > 0)
+            reasons.add(this.overMessage + " over the limit per message");
+        if (this.overTotal > 0)
+            reasons.add(this.overTotal + " over the total limit");
+
+        return new Document()
+                .append(new Doc("[note]").colors(Ansi.Color.CYAN, null, Ansi.Modifier.BOLD))
+                .append(Doc.colon())
+                .append(Doc.space())
+                .append(new Doc(suppressed + (suppressed == 1 ? " report was" : " reports were") + " suppressed (" + String.join(", ", reasons) + ")"))
+                .append(Doc.line());
+    }
+
+    /**
+     * Adds the digest of a key to the reports seen, keeping only its first 128 bits.
+     * Two different keys have the same digest with a probability low enough to be ignored.
+     *
+     * @return Whether the key was not seen before
+     */
+    private boolean addDigest(final String key) {
+        final byte[] hash = this.digest.digest(key.getBytes(StandardCharsets.UTF_8));
+        long high = 0;
+        long low = 0;
+        for (int i = 0; i < 8; ++i) {
+            high = high << 8 | (hash[i] & 0xFF);
+            low = low << 8 | (hash[8 + i] & 0xFF);
+        }
+        low |= 1;
+
+        final int slot = slotOf(this.seen, high, low);
+        if (this.seen[slot + 1] != 0)
+            return false;
+
+        this.seen[slot] = high;
+        this.seen[slot + 1] = low;
+        if (4 * ++this.seenCount > this.seen.length) {
+            final long[] seen = new long[2 * this.seen.length];
+            for (int i = 0; i < this.seen.length; i += 2) {
+                if (this.seen[i + 1] != 0) {
+                    final int moved = slotOf(seen, this.seen[i], this.seen[i + 1]);
+                    seen[moved] = this.seen[i];
+                    seen[moved + 1] = this.seen[i + 1];
+                }
+            }
+            this.seen = seen;
+        }
+        return true;
+    }
+
+    /**
+     * @return The index of the slot holding the given digest, or of the free slot where it should go
+     */
+    private static int slotOf(final long[] table, final long high, final long low) {
+        final int mask = table.length / 2 - 1;
+        int slot = (int) (high ^ high >>> 32) & mask;
+        while (table[2 * slot + 1] != 0 && (table[2 * slot] != high || table[2 * slot + 1] != low)) {
+            slot = (slot + 1) & mask;
+        }
+        return 2 * slot;
+    }
+
+    /**
+     * Describes the whole structure of a report, so that two reports have the same key only if they are identical.
+     * Texts are prefixed with their length, so that no text can be mistaken for a part of the structure.
+     */
+    private String key(final Report<Msg> report) {
+        final StringBuilder key = new StringBuilder();
+        key.append(report.isError() ? 'E' : 'W');
+        this.appendText(key, report.message());
+
+        final MarkerTable<Msg> markers = report.markers();
+        for (int i = 0; i < markers.size(); ++i) {
+            final Position pos = markers.position(i);
+            key.append(Report.kind(markers.marker(i)))
+                    .append(pos.by_offset ? '@' : ':').append(pos.beginning_line).append(':').append(pos.beginning_column)
+                    .append(':').append(pos.ending_line).append(':').append(pos.ending_column);
+            if (pos.file_name == null)
+                key.append('-');
+            else
+                appendText(key, pos.file_name);
+            this.appendText(key, markers.marker(i).getMessage());
+        }
+
+        key.append('|');
+        for (final Msg hint : report.hints()) {
+            this.appendText(key, hint);
+        }
+        return key.toString();
+    }
+
+    private void appendText(final StringBuilder key, final Msg msg) {
+        appendText(key, this.text(msg));
+    }
+
+    private static void appendText(final StringBuilder key, final String text) {
+        key.append(text.length()).append('"').append(text);
+    }
+
+    private String text(final Msg msg) {
+        this.scratch.setLength(0);
+        msg.pretty().render(this.scratch, false);
+        return this.scratch.toString();
+    }
+}
@@ -0,0 +1,101 @@
+package com.github.mesabloo.diagnose4j;
+
+import java.util.Objects;
+
+/**
+ * Limits on the reports printed by a {@link Diagnostic}, to keep pathological inputs from flooding the output.
+ *
+ * Reports over the limits are dropped before being rendered, and a single line telling how many reports were suppressed
+ * is printed after all the others.
+ * Limits are immutable: each <code>with</code> method returns a modified copy.
+ * <pre><code>
+ * diagnostic.withLimits(ReportLimits.none()
+ *         .withDeduplication(true)
+ *         .withMaxReportsPerMessage(10)
+ *         .withMaxReports(500));
+ * </code></pre>
+ */
+public final class ReportLimits {
+    private static final ReportLimits NONE = new ReportLimits(false, 0, 0, 0);
+
+    private final boolean deduplicate;
+    private final int maxReports;
+    private final int maxReportsPerFile;
+    private final int maxReportsPerMessage;
+
+    private ReportLimits(final boolean deduplicate, final int maxReports, final int maxReportsPerFile, final int maxReportsPerMessage) {
+        this.deduplicate = deduplicate;
+        this.maxReports = maxReports;
+        this.maxReportsPerFile = maxReportsPerFile;
+        this.maxReportsPerMessage = maxReportsPerMessage;
+    }
+
+    /**
+     * @return Limits under which all reports are printed, including duplicates
+     */
+    public static ReportLimits none() {
+        return NONE;
+    }
+
+    /**
+     * @param deduplicate Whether to print only the first of several identical reports.
+     *                    Reports are identical when they have the same severity, the same messages and hints
+     *                    (compared as plain text), and the same kinds of markers at the same positions.
+     */
+    public ReportLimits withDeduplication(final boolean deduplicate) {
+        return new ReportLimits(deduplicate, this.maxReports, this.maxReportsPerFile, this.maxReportsPerMessage);
+    }
+
+    /**
+     * @param maxReports The maximum number of reports to print, or <code>0</code> for no limit
+     */
+    public ReportLimits withMaxReports(final int maxReports) {
+        return new ReportLimits(this.deduplicate, Math.max(0, maxReports), this.maxReportsPerFile, this.maxReportsPerMessage);
+    }
+
+    /**
+     * @param maxReportsPerFile The maximum number of reports to print for each file, or <code>0</code> for no limit.
+     *                          A report belongs to the file of its first {@link com.github.mesabloo.diagnose4j.report.Marker.This} marker
+     *                          (or of its first marker, if it has none), and reports without markers are not limited.
+     */
+    public ReportLimits withMaxReportsPerFile(final int maxReportsPerFile) {
+        return new ReportLimits(this.deduplicate, this.maxReports, Math.max(0, maxReportsPerFile), this.maxReportsPerMessage);
+    }
+
+    /**
+     * @param maxReportsPerMessage The maximum number of reports to print with the same message (compared as plain text),
+     *                             or <code>0</code> for no limit
+     */
+    public ReportLimits withMaxReportsPerMessage(final int maxReportsPerMessage) {
+        return new ReportLimits(this.deduplicate, this.maxReports, this.maxReportsPerFile, Math.max(0, maxReportsPerMessage));
+    }
+
+    public boolean isDeduplicating() {
+        return this.deduplicate;
+    }
+
+    public int getMaxReports() {
+        return this.maxReports;
+    }
+
+    public int getMaxReportsPerFile() {
+        return this.maxReportsPerFile;
+    }
+
+    public int getMaxReportsPerMessage() {
+        return this.maxReportsPerMessage;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ReportLimits that = (ReportLimits) o;
+        return deduplicate == that.deduplicate && maxReports == that.maxReports && maxReportsPerFile == that.maxReportsPerFile && maxReportsPerMessage == that.maxReportsPerMessage;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(deduplicate, maxReports, maxReportsPerFile, maxReportsPerMessage);
+    }
+}
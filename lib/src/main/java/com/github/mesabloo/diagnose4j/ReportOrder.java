@@ -0,0 +1,24 @@
+package com.github.mesabloo.diagnose4j;
+
+/**
+ * The order in which a {@link Diagnostic} prints its reports.
+ *
+ * @see Diagnostic#withReportOrder(ReportOrder)
+ */
+public enum ReportOrder {
+    /**
+     * Reports are printed in the order in which they were inserted.
+     */
+    INSERTION,
+
+    /**
+     * Reports are sorted by the file of their primary position, then by the line and column where it begins,
+     * so that all the reports of a file are printed together.
+     * Reports without markers are printed last, and reports at the same position keep their insertion order.
+     *
+     * The lines of a file, and its line index, are only kept while its reports are rendered.
+     *
+     * @see Report#primaryPosition()
+     */
+    LOCATION
+}
@@ -0,0 +1,129 @@
+package com.github.mesabloo.diagnose4j;
+
+import com.github.mesabloo.diagnose4j.report.Marker;
+
+import java.io.File;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.function.Function;
+
+/**
+ * Writes reports as a <a href="https://docs.oasis-open.org/sarif/sarif/v2.1.0/sarif-v2.1.0.html">SARIF 2.1.0</a> log
+ * containing a single run.
+ *
+ * Each report becomes a result:
+ * <ul>
+ *     <li>its level is <code>error</code> or <code>warning</code></li>
+ *     <li>{@link Marker.This} markers are its <code>locations</code>,
+ *         while {@link Marker.Where} and {@link Marker.Maybe} markers are its <code>relatedLocations</code></li>
+ *     <li>its hints are kept in its property bag, under <code>hints</code></li>
+ * </ul>
+ * File names are written as percent-encoded URI references, relative unless the file name is an absolute Windows path.
+ * The header of the log is written when the writer is created, and the log is only complete once the writer is closed.
+ *
+ * @param <Msg>
+ */
+public final class SarifWriter<Msg extends Pretty<Msg>> extends DiagnosticWriter<Msg> {
+    private static final String SCHEMA = "https://json.schemastore.org/sarif-2.1.0.json";
+
+    private boolean isFirst;
+
+    SarifWriter(final Appendable out, final String toolName, final Function<Report<Msg>, Report<Msg>> resolver) {
+        super(new JsonOutput(out), resolver);
+        this.isFirst = true;
+
+        this.out.raw('{')
+                .key("$schema").string(SCHEMA)
+                .raw(',').key("version").string("2.1.0")
+                .raw(',').key("runs").raw("[{")
+                .key("tool").raw('{').key("driver").raw('{').key("name").string(toolName).raw("}}")
+                .raw(',').key("columnKind").string("utf16CodeUnits")
+                .raw(',').key("results").raw('[');
+        // columns count UTF-16 code units, as Java strings do
+    }
+
+    @Override
+    void write(final Report<Msg> report) {
+        if (!this.isFirst)
+            this.out.raw(',');
+        this.isFirst = false;
+
+        this.out.raw("\n{")
+                .key("level").string(report.isError() ? "error" : "warning")
+                .raw(',').key("message").raw('{').key("text").message(report.message()).raw('}');
+
+        final MarkerTable<Msg> markers = report.markers();
+        this.out.raw(',').key("locations").raw('[');
+        this.locations(markers, true);
+        this.out.raw(']').raw(',').key("relatedLocations").raw('[');
+        this.locations(markers, false);
+        this.out.raw(']');
+
+        if (!report.hints().isEmpty()) {
+            this.out.raw(',').key("properties").raw('{').key("hints").raw('[');
+            boolean first = true;
+            for (final Msg hint : report.hints()) {
+                if (!first)
+                    this.out.raw(',');
+                this.out.message(hint);
+                first = false;
+            }
+            this.out.raw("]}");
+        }
+        this.out.raw('}');
+    }
+
+    /**
+     * Writes either the primary locations of a result, or its related locations.
+     */
+    private void locations(final MarkerTable<Msg> markers, final boolean primary) {
+        boolean first = true;
+        for (int i = 0; i < markers.size(); ++i) {
+            final Marker<Msg> marker = markers.marker(i);
+            if (marker instanceof Marker.This != primary)
+                continue;
+
+            final Position pos = markers.position(i);
+            if (!first)
+                this.out.raw(',');
+            first = false;
+
+            this.out.raw('{')
+                    .key("physicalLocation").raw('{')
+                    .key("artifactLocation").raw('{').key("uri").string(uri(pos.file())).raw('}')
+                    .raw(',').key("region").raw('{')
+                    .key("startLine").number(pos.beginning_line)
+                    .raw(',').key("startColumn").number(pos.beginning_column)
+                    .raw(',').key("endLine").number(pos.ending_line)
+                    .raw(',').key("endColumn").number(pos.ending_column)
+                    .raw("}}")
+                    .raw(',').key("message").raw('{').key("text").message(marker.getMessage()).raw("}}");
+        }
+    }
+
+    /**
+     * Converts a file name to a URI reference, percent-encoding characters which are not allowed in URIs.
+     */
+    private static String uri(final String file) {
+        String path = File.separatorChar == '\\' ? file.replace('\\', '/') : file;
+        try {
+            if (path.length() >= 3 && Character.isLetter(path.charAt(0)) && path.charAt(1) == ':' && path.charAt(2) == '/')
+                return new URI("file", "", "/" + path, null, null).toASCIIString();
+            // an absolute Windows path is not a valid relative reference
+
+            final int colon = path.indexOf(':');
+            if (colon >= 0 && path.lastIndexOf('/', colon) < 0)
+                path = "./" + path;
+            // a colon in the first segment would be mistaken for the end of a scheme
+
+            return new URI(null, null, path, null).toASCIIString();
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException("Invalid file name " + file, e);
+        }
+    }
+
+    @Override
+    void end() {
+        this.out.raw("\n]}]}\n");
+    }
+}
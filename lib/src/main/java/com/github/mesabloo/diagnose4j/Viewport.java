@@ -0,0 +1,177 @@
+package com.github.mesabloo.diagnose4j;
+
+import com.github.mesabloo.diagnose4j.report.Marker;
+
+import java.util.AbstractMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * A window over a source line which is too long to be shown entirely.
+ *
+ * The window is placed around the markers of the line, and the parts of the line which are cut off are replaced
+ * by an ellipsis.
+ * Markers are moved to the columns where they appear inside the window; parts of markers outside of the window
+ * are moved onto the ellipsis on the corresponding side.
+ */
+final class Viewport {
+    private final String code;
+    private final int start;
+    private final int end;
+    private final int left;
+    private final int right;
+    /**
+     * <code>offsets[i]</code> is the number of characters the first <code>i</code> characters of the window take
+     * once tabs are expanded, or <code>null</code> if there is no tab in the window.
+     */
+    private final int[] offsets;
+
+    /**
+     * @param code   The original line
+     * @param widths The display widths of the original line
+     * @param start  The first column of the line shown in the window
+     * @param end    The column right after the last column shown
+     */
+    private Viewport(final String code, final DisplayWidths widths, final int start, final int end, final String ellipsis) {
+        this.left = start > 1 ? ellipsis.length() : 0;
+        this.right = end <= code.length() ? ellipsis.length() : 0;
+        this.code = (this.left > 0 ? ellipsis : "") + widths.substring(code, start, end) + (this.right > 0 ? ellipsis : "");
+        // tabs are expanded here, as tab stops inside the window are not where they are in the whole line
+        this.start = start;
+        this.end = end;
+
+        int[] offsets = null;
+        if (code.lastIndexOf('\t', end - 2) >= start - 1) {
+            offsets = new int[end - start + 1];
+            for (int i = 0; i < end - start; ++i) {
+                final int column = start + i;
+                offsets[i + 1] = offsets[i] + (code.charAt(column - 1) == '\t' ? (int) (widths.column(column + 1) - widths.column(column)) : 1);
+            }
+        }
+        this.offsets = offsets;
+    }
+
+    /**
+     * Places a window over a line, unless the line is narrow enough.
+     *
+     * The window is placed in display columns, so that tabs and wide characters are accounted for.
+     *
+     * @param code    The line of code
+     * @param widths  The display widths of the line
+     * @param markers All markers shown on this line
+     * @param line    The number of the line
+     * @param width   The maximum number of display columns to show, or <code>0</code> if there is no limit
+     * @return A window over the line, or <code>null</code> if the whole line can be shown
+     */
+    static <Msg extends Pretty<Msg>> Viewport of(final String code, final DisplayWidths widths, final List<Map.Entry<Position, Marker<Msg>>> markers, final long line, final int width, final boolean withUnicode) {
+        final int length = code.length();
+        final long lineWidth = widths.column(length + 1) - 1;
+        if (width <= 0 || lineWidth <= width)
+            return null;
+
+        final String ellipsis = withUnicode ? "…" : "...";
+        final int available = Math.max(1, width - 2 * ellipsis.length());
+        // every character of the ellipsis takes a single column
+
+        long low = Long.MAX_VALUE;
+        long high = Long.MIN_VALUE;
+        for (final Map.Entry<Position, Marker<Msg>> entry : markers) {
+            final Position pos = entry.getKey();
+            if (pos.beginning_line == line) {
+                low = Math.min(low, pos.beginning_column);
+                high = Math.max(high, pos.ending_line == line ? pos.ending_column : pos.beginning_column + 1);
+            }
+            if (pos.ending_line == line) {
+                low = Math.min(low, pos.beginning_line == line ? pos.beginning_column : pos.ending_column - 1);
+                high = Math.max(high, pos.ending_column);
+            }
+            // markers only passing through the line cover all of it, so they do not tell where to look
+        }
+        if (low > high) {
+            low = 1;
+            high = 1;
+        }
+        low = widths.column(Math.max(1, Math.min(low, length + 1)));
+        high = Math.max(low, widths.column(Math.max(1, Math.min(high, length + 1))));
+
+        long start = Math.max(1, low - Math.max(0, (available - (high - low)) / 2));
+        final long end = Math.min(lineWidth + 1, start + available);
+        start = Math.max(1, end - available);
+        // center the markers inside the window, or start at the first marker if they do not all fit
+
+        final int first = adjustStart(code, firstColumnFrom(widths, length, start));
+        final int last = adjustEnd(code, lastColumnUpTo(widths, length, end));
+        // characters only partly inside the window (like wide characters and tabs on its edges) are left out
+
+        return new Viewport(code, widths, first, Math.max(first, last), ellipsis);
+    }
+
+    /**
+     * @return The visible part of the line, with ellipses where it was cut and tabs expanded to spaces
+     */
+    String code() {
+        return this.code;
+    }
+
+    /**
+     * Moves markers to the columns where they are shown inside the window.
+     */
+    <Msg extends Pretty<Msg>> List<Map.Entry<Position, Marker<Msg>>> shift(final List<Map.Entry<Position, Marker<Msg>>> markers) {
+        return markers.stream()
+                .map(entry -> {
+                    final Position pos = entry.getKey();
+                    return new AbstractMap.SimpleEntry<>(pos.withColumns(this.column(pos.beginning_column), this.column(pos.ending_column)), entry.getValue());
+                })
+                .collect(Collectors.toList());
+    }
+
+    private long column(final long column) {
+        if (column < this.start)
+            return 1;
+        if (column > this.end)
+            return this.code.length() + 1;
+        final long offset = column - this.start;
+        return (this.offsets == null ? offset : this.offsets[(int) offset]) + 1 + this.left;
+    }
+
+    /**
+     * @return The first column of the line whose character is displayed at or after the given display column
+     */
+    private static int firstColumnFrom(final DisplayWidths widths, final int length, final long displayColumn) {
+        int low = 1;
+        int high = length + 1;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (widths.column(mid) >= displayColumn)
+                high = mid;
+            else
+                low = mid + 1;
+        }
+        return low;
+    }
+
+    /**
+     * @return The last column of the line whose character is displayed at or before the given display column
+     */
+    private static int lastColumnUpTo(final DisplayWidths widths, final int length, final long displayColumn) {
+        int low = 1;
+        int high = length + 1;
+        while (low < high) {
+            final int mid = (low + high + 1) >>> 1;
+            if (widths.column(mid) <= displayColumn)
+                low = mid;
+            else
+                high = mid - 1;
+        }
+        return low;
+    }
+
+    private static int adjustStart(final String code, final int start) {
+        return start > 1 && start <= code.length() && Character.isLowSurrogate(code.charAt(start - 1)) ? start + 1 : start;
+    }
+
+    private static int adjustEnd(final String code, final int end) {
+        return end >= 2 && Character.isHighSurrogate(code.charAt(end - 2)) ? end - 1 : end;
+    }
+}
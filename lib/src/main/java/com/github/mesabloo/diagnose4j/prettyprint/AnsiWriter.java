@@ -0,0 +1,249 @@
+package com.github.mesabloo.diagnose4j.prettyprint;
+
+import com.github.tomaslanger.chalk.Ansi;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * A buffered writer emitting text along with ANSI SGR escape sequences.
+ *
+ * Instead of wrapping every piece of text inside its own escape sequences, the writer remembers which style is currently
+ * active on the terminal, and only emits the parameters needed to go from the active style to the style of the next
+ * character actually written.
+ * The style is always reset before a newline, so that backgrounds do not bleed onto the next line.
+ *
+ * The writer also keeps track of the column it is at, so that aligned documents can be indented while being written.
+ */
+final class AnsiWriter {
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * The SGR parameters of all colors and modifiers.
+     * Constants missing from these maps cannot be printed, instead of being printed with the wrong escape sequence.
+     * A modifier mapped to <code>0</code> has no escape sequence of its own.
+     */
+    private static final Map<Ansi.Color, Integer> FG_CODES = new EnumMap<>(Ansi.Color.class);
+    private static final Map<Ansi.BgColor, Integer> BG_CODES = new EnumMap<>(Ansi.BgColor.class);
+    private static final Map<Ansi.Modifier, Integer> MODIFIER_CODES = new EnumMap<>(Ansi.Modifier.class);
+    private static final Ansi.Modifier[] MODIFIERS = Ansi.Modifier.values();
+
+    static {
+        FG_CODES.put(Ansi.Color.BLACK, 30);
+        FG_CODES.put(Ansi.Color.RED, 31);
+        FG_CODES.put(Ansi.Color.GREEN, 32);
+        FG_CODES.put(Ansi.Color.YELLOW, 33);
+        FG_CODES.put(Ansi.Color.BLUE, 34);
+        FG_CODES.put(Ansi.Color.MAGENTA, 35);
+        FG_CODES.put(Ansi.Color.CYAN, 36);
+        FG_CODES.put(Ansi.Color.WHITE, 37);
+        FG_CODES.put(Ansi.Color.GRAY, 90);
+        // bright black
+
+        BG_CODES.put(Ansi.BgColor.BLACK, 40);
+        BG_CODES.put(Ansi.BgColor.RED, 41);
+        BG_CODES.put(Ansi.BgColor.GREEN, 42);
+        BG_CODES.put(Ansi.BgColor.YELLOW, 43);
+        BG_CODES.put(Ansi.BgColor.BLUE, 44);
+        BG_CODES.put(Ansi.BgColor.MAGENTA, 45);
+        BG_CODES.put(Ansi.BgColor.CYAN, 46);
+        BG_CODES.put(Ansi.BgColor.WHITE, 47);
+
+        MODIFIER_CODES.put(Ansi.Modifier.RESET, 0);
+        MODIFIER_CODES.put(Ansi.Modifier.BOLD, 1);
+        MODIFIER_CODES.put(Ansi.Modifier.DIM, 2);
+        MODIFIER_CODES.put(Ansi.Modifier.ITALIC, 3);
+        MODIFIER_CODES.put(Ansi.Modifier.UNDERLINE, 4);
+        MODIFIER_CODES.put(Ansi.Modifier.INVERSE, 7);
+        MODIFIER_CODES.put(Ansi.Modifier.HIDDEN, 8);
+        MODIFIER_CODES.put(Ansi.Modifier.STRIKETHROUGH, 9);
+    }
+
+    private final Appendable sink;
+    private final boolean withColors;
+    private final StringBuilder buffer;
+
+    // style currently active on the terminal, see Style
+    private int current = Style.NONE;
+
+    // style of the next characters to write
+    private int wanted = Style.NONE;
+
+    // number of characters written since the last newline
+    private int column = 0;
+
+    /**
+     * Creates a new writer.
+     *
+     * @param sink       Where to send the output when the internal buffer is full, or when {@link #flush()} is called
+     * @param withColors Whether escape sequences should be output at all
+     */
+    AnsiWriter(final Appendable sink, final boolean withColors) {
+        this.sink = sink;
+        this.withColors = withColors;
+        this.buffer = new StringBuilder();
+        // the buffer only grows as needed, as most documents (like single messages) are much smaller than a full buffer
+    }
+
+    /**
+     * Changes the style of the text written next.
+     * Nothing is output until some character is actually written.
+     */
+    void style(final int style) {
+        this.wanted = style;
+    }
+
+    /**
+     * @return The number of characters written since the last newline
+     */
+    int column() {
+        return this.column;
+    }
+
+    /**
+     * Writes some text which does not contain any newline using the current style.
+     */
+    void writeInline(final String text) {
+        if (text.isEmpty())
+            return;
+
+        this.applyStyle();
+        this.buffer.append(text);
+        this.column += text.length();
+
+        if (this.buffer.length() >= BUFFER_SIZE) {
+            this.flushBuffer();
+        }
+    }
+
+    /**
+     * Writes some text using the current style.
+     *
+     * @param indent The number of spaces to insert after each newline, also using the current style
+     */
+    void write(final String text, final int indent) {
+        final int length = text.length();
+        int start = 0;
+
+        for (int i = 0; i < length; ++i) {
+            if (text.charAt(i) == '\n') {
+                if (start < i) {
+                    this.applyStyle();
+                    this.buffer.append(text, start, i);
+                }
+                this.resetStyle();
+                this.buffer.append('\n');
+                this.column = 0;
+
+                if (indent > 0) {
+                    this.applyStyle();
+                    for (int j = 0; j < indent; ++j) {
+                        this.buffer.append(' ');
+                    }
+                    this.column = indent;
+                }
+                start = i + 1;
+            }
+        }
+        if (start < length) {
+            this.applyStyle();
+            this.buffer.append(text, start, length);
+            this.column += length - start;
+        }
+
+        if (this.buffer.length() >= BUFFER_SIZE) {
+            this.flushBuffer();
+        }
+    }
+
+    /**
+     * Resets the style of the terminal and sends everything buffered to the sink.
+     */
+    void flush() {
+        this.resetStyle();
+        this.flushBuffer();
+    }
+
+    ///////////////////////
+
+    private void applyStyle() {
+        if (!this.withColors || this.wanted == this.current)
+            return;
+
+        final Ansi.Color fg = Style.fg(this.wanted);
+        final Ansi.BgColor bg = Style.bg(this.wanted);
+        final int modifiers = Style.modifiers(this.wanted);
+
+        final boolean mustReset = (Style.modifiers(this.current) & ~modifiers) != 0
+                || (fg == null && Style.fg(this.current) != null)
+                || (bg == null && Style.bg(this.current) != null);
+        // there is no portable way of removing only some modifiers, so start again from a clean state
+        if (mustReset)
+            this.current = Style.NONE;
+
+        final int escapeStart = this.buffer.length();
+        this.buffer.append("\u001b[");
+        boolean first = true;
+        if (mustReset) {
+            this.buffer.append('0');
+            first = false;
+        }
+
+        final int addedModifiers = modifiers & ~Style.modifiers(this.current);
+        for (int i = 0; i < MODIFIERS.length; ++i) {
+            if ((addedModifiers & (1 << i)) != 0) {
+                final int code = code(MODIFIER_CODES, MODIFIERS[i]);
+                if (code != 0)
+                    first = this.appendParameter(code, first);
+            }
+        }
+        if (fg != null && fg != Style.fg(this.current)) {
+            first = this.appendParameter(code(FG_CODES, fg), first);
+        }
+        if (bg != null && bg != Style.bg(this.current)) {
+            first = this.appendParameter(code(BG_CODES, bg), first);
+        }
+
+        if (first)
+            this.buffer.setLength(escapeStart);
+        else
+            this.buffer.append('m');
+
+        this.current = this.wanted;
+    }
+
+    private boolean appendParameter(final int code, final boolean first) {
+        if (!first)
+            this.buffer.append(';');
+        this.buffer.append(code);
+        return false;
+    }
+
+    private void resetStyle() {
+        if (this.current != Style.NONE) {
+            this.buffer.append("\u001b[0m");
+            this.current = Style.NONE;
+        }
+    }
+
+    private void flushBuffer() {
+        try {
+            this.sink.append(this.buffer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.buffer.setLength(0);
+    }
+
+    /**
+     * @throws IllegalArgumentException if there is no known escape sequence for the constant
+     */
+    private static <E extends Enum<E>> int code(final Map<E, Integer> codes, final E constant) {
+        final Integer code = codes.get(constant);
+        if (code == null)
+            throw new IllegalArgumentException("No ANSI escape sequence is known for " + constant.getDeclaringClass().getSimpleName() + "." + constant.name());
+        return code;
+    }
+}
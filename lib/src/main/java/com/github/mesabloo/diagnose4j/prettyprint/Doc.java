@@ -1,21 +1,32 @@
 package com.github.mesabloo.diagnose4j.prettyprint;
 
 import com.github.tomaslanger.chalk.Ansi;
-import com.github.tomaslanger.chalk.Chalk;
 
-import java.io.PrintStream;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
-import java.util.Objects;
-import java.util.stream.Collectors;
 
+/**
+ * An immutable piece of text, along with the style it should be printed with.
+ *
+ * Methods changing the style of a document return a new document, so that documents can safely be shared,
+ * including between threads rendering different reports.
+ * Common documents such as {@link #space()} or {@link #line()} are shared instead of being allocated on each call.
+ */
 public class Doc {
+    private static final Doc COLON = new Doc(":");
+    private static final Doc SPACE = new Doc(" ");
+    private static final Doc LINE = new Doc("\n");
+    private static final Doc EMPTY = new Doc("");
+
     final String content;
-    private Ansi.Color fgColor;
-    private Ansi.BgColor bgColor;
-    private List<Ansi.Modifier> attributes;
-    private boolean alignedToCurrentIndent;
+    /**
+     * @see Style
+     */
+    private final int style;
+    private final boolean alignedToCurrentIndent;
+
+    // computed once from the content, and shared by all restyled copies
+    private final int newlines;
+    private final int lastLineWidth;
+    private final int width;
 
     /**
      * Generates a colorless document from a <code>toString</code> method.
@@ -25,80 +36,91 @@ public class Doc {
      */
     public <T> Doc(final T content) {
         this.content = content.toString();
-        this.fgColor = null;
-        this.bgColor = null;
-        this.attributes = new ArrayList<>();
+        this.style = Style.NONE;
         this.alignedToCurrentIndent = false;
+
+        int newlines = 0;
+        int lineStart = 0;
+        int width = 0;
+        final int length = this.content.length();
+        for (int i = 0; i < length; ++i) {
+            if (this.content.charAt(i) == '\n') {
+                width = Math.max(width, i - lineStart);
+                lineStart = i + 1;
+                ++newlines;
+            }
+        }
+        this.newlines = newlines;
+        this.lastLineWidth = length - lineStart;
+        this.width = Math.max(width, this.lastLineWidth);
+    }
+
+    private Doc(final Doc source, final int style, final boolean alignedToCurrentIndent) {
+        this.content = source.content;
+        this.style = style;
+        this.alignedToCurrentIndent = alignedToCurrentIndent;
+        this.newlines = source.newlines;
+        this.lastLineWidth = source.lastLineWidth;
+        this.width = source.width;
     }
 
+    /**
+     * @return A copy of this document, using the given colors and attributes instead of the current ones
+     */
     public Doc colors(final Ansi.Color fg, final Ansi.BgColor bg, final Ansi.Modifier... attributes) {
-        this.fgColor = fg;
-        this.bgColor = bg;
-        this.attributes = Arrays.stream(attributes)
-                .filter(Objects::nonNull)
-                .collect(Collectors.toList());
+        final int style = Style.of(fg, bg, attributes);
+        if (style == this.style)
+            return this;
 
-        return this;
+        return new Doc(this, style, this.alignedToCurrentIndent);
     }
 
+    /**
+     * @return The length of the longest line of this document
+     */
     public long width() {
-        return Arrays.stream(content.split("\n"))
-                .map(String::length)
-                .max(Integer::compare)
-                .orElse(0);
+        return this.width;
     }
 
+    /**
+     * @return A copy of this document, where all lines are indented to the column the document starts at
+     */
     public Doc aligned() {
-        this.alignedToCurrentIndent = true;
+        if (this.alignedToCurrentIndent)
+            return this;
 
-        return this;
+        return new Doc(this, this.style, true);
     }
 
     ////////
 
     public static Doc colon() {
-        return new Doc(":");
+        return COLON;
     }
 
     public static Doc space() {
-        return new Doc(" ");
+        return SPACE;
     }
 
     public static Doc line() {
-        return new Doc("\n");
+        return LINE;
     }
 
     public static Doc empty() {
-        return new Doc("");
+        return EMPTY;
     }
 
     ///////////////////////
 
-    void print(PrintStream handle, final long currentColumn) {
-        String content = this.content;
-        if (this.alignedToCurrentIndent) {
-            StringBuilder padding = new StringBuilder();
-            for (int i = 0; i < currentColumn - 1; ++i) {
-                padding.append(" ");
-            }
-
-            content = content.replaceAll("\n", "\n" + padding);
-        }
-
-        long nbNewlines = content.chars().filter(n -> n == '\n').count();
-        boolean shouldAddNewlines = !content.equals("\n");
-        for (String line : shouldAddNewlines ? content.split("\n") : new String[]{"\n"}) {
-            // naive version: just output content with colors
-            Chalk c = Chalk.on(shouldAddNewlines && nbNewlines-- > 0 ? (line + "\n") : line);
-            if (this.fgColor != null)
-                c = c.apply(this.fgColor);
-            if (this.bgColor != null)
-                c = c.apply(this.bgColor);
-            for (Ansi.Modifier mod : this.attributes) {
-                c = c.apply(mod);
-            }
-
-            handle.print(c);
-        }
+    /**
+     * @param style   The style to print this document with, or {@link Style#INHERIT} to use its own style
+     * @param aligned Whether to align this document even if it was not created aligned
+     */
+    void print(final AnsiWriter out, final int style, final boolean aligned) {
+        out.style(style == Style.INHERIT ? this.style : style);
+        if (this.newlines == 0)
+            out.writeInline(this.content);
+        else
+            out.write(this.content, aligned || this.alignedToCurrentIndent ? out.column() : 0);
     }
 }
@@ -1,61 +1,194 @@
 package com.github.mesabloo.diagnose4j.prettyprint;
 
 import com.github.tomaslanger.chalk.Ansi;
+import com.github.tomaslanger.chalk.Chalk;
 
 import java.io.PrintStream;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.ArrayDeque;
+import java.util.Deque;
 
+/**
+ * A sequence of {@link Doc}s, built by appending documents one after the other.
+ *
+ * Parts are stored in a persistent tree whose nodes are never modified once created:
+ * appending a whole document only creates a single node referencing it, and changing the style of a document
+ * wraps it inside a node instead of copying all its parts.
+ * Appending a document to another one takes a snapshot of it, so that appending to it afterwards has no effect
+ * on the first document.
+ */
 public class Document {
-    private final List<Doc> parts;
+    private Node root;
 
     public Document() {
-        this.parts = new ArrayList<>();
+        this.root = null;
     }
 
+    private Document(final Node root) {
+        this.root = root;
+    }
+
+    /**
+     * @return A new document, where every part is aligned to the column it starts at
+     * @see Doc#aligned()
+     */
     public Document aligned() {
-        for (final Doc part : this.parts) {
-            part.aligned();
-        }
-        return this;
+        return this.root == null ? new Document() : new Document(new Aligned(this.root));
     }
 
+    /**
+     * @return A new document, where every part uses the given colors and attributes
+     * @see Doc#colors(Ansi.Color, Ansi.BgColor, Ansi.Modifier...)
+     */
     public Document colors(final Ansi.Color fgColor, final Ansi.BgColor bgColor, final Ansi.Modifier... mods) {
-        for (final Doc part : this.parts) {
-            part.colors(fgColor, bgColor, mods);
-        }
-        return this;
+        return this.root == null ? new Document() : new Document(new Styled(this.root, Style.of(fgColor, bgColor, mods)));
     }
 
     public Document append(final Doc part) {
-        this.parts.add(part);
+        this.root = concat(this.root, new Leaf(part));
         return this;
     }
 
     public Document appendDoc(final Document doc) {
-        this.parts.addAll(doc.parts);
+        this.root = concat(this.root, doc.root);
         return this;
     }
 
+    /**
+     * Removes colors from all the parts of this document.
+     *
+     * @deprecated Colors can be disabled when printing, with {@link #print(PrintStream, boolean)},
+     *             which does not require changing the document.
+     */
+    @Deprecated
     public void removeColors() {
-        for (final Doc doc : this.parts) {
-            doc.colors(null, null);
-        }
+        if (this.root != null)
+            this.root = new Styled(this.root, Style.NONE);
     }
 
+    /**
+     * Prints the document onto the given stream, with colors only if Chalk detected that the terminal supports them
+     * (or if they were enabled with {@link Chalk#setColorEnabled(boolean)}).
+     *
+     * @see Document#print(PrintStream, boolean)
+     */
     public void print(PrintStream handle) {
-        long currentColumn = 1;
-
-        for (final Doc doc : this.parts) {
-            doc.print(handle, currentColumn);
-
-            final String[] lines = doc.content.split("\n");
-            if (lines.length == 1)
-                currentColumn += lines[0].length();
-            else if (lines.length == 0)
-                currentColumn = 1;
-            else
-                currentColumn = lines[lines.length - 1].length() + 1;
+        this.print(handle, Chalk.isColorEnabled());
+    }
+
+    /**
+     * Prints the document onto the given stream.
+     *
+     * Escape sequences are only output when the style actually changes between two pieces of text,
+     * and the output is buffered before being sent to the stream.
+     *
+     * @param handle     The stream to print onto
+     * @param withColors Whether to output ANSI escape sequences
+     */
+    public void print(PrintStream handle, final boolean withColors) {
+        this.render(handle, withColors);
+    }
+
+    /**
+     * Renders the document into any character sink, for example a {@link StringBuilder}.
+     *
+     * @param sink       Where to output the rendered document
+     * @param withColors Whether to output ANSI escape sequences
+     * @see Document#print(PrintStream, boolean)
+     */
+    public void render(final Appendable sink, final boolean withColors) {
+        final AnsiWriter out = new AnsiWriter(sink, withColors);
+
+        // trees built by appending parts one by one are very deep, so they are walked without recursion
+        final Deque<Frame> stack = new ArrayDeque<>();
+        if (this.root != null)
+            stack.push(new Frame(this.root, Style.INHERIT, false));
+
+        while (!stack.isEmpty()) {
+            final Frame frame = stack.pop();
+            Node node = frame.node;
+            int style = frame.style;
+            boolean aligned = frame.aligned;
+
+            while (!(node instanceof Leaf)) {
+                if (node instanceof Concat) {
+                    final Concat concat = (Concat) node;
+                    stack.push(new Frame(concat.right, style, aligned));
+                    node = concat.left;
+                } else if (node instanceof Styled) {
+                    // the outermost style replaces all styles inside it
+                    if (style == Style.INHERIT)
+                        style = ((Styled) node).style;
+                    node = ((Styled) node).inner;
+                } else {
+                    aligned = true;
+                    node = ((Aligned) node).inner;
+                }
+            }
+
+            ((Leaf) node).doc.print(out, style, aligned);
+        }
+
+        out.flush();
+    }
+
+    ///////////////////////
+
+    private static Node concat(final Node left, final Node right) {
+        if (left == null)
+            return right;
+        if (right == null)
+            return left;
+        return new Concat(left, right);
+    }
+
+    private abstract static class Node {
+    }
+
+    private static final class Leaf extends Node {
+        final Doc doc;
+
+        Leaf(final Doc doc) {
+            this.doc = doc;
+        }
+    }
+
+    private static final class Concat extends Node {
+        final Node left;
+        final Node right;
+
+        Concat(final Node left, final Node right) {
+            this.left = left;
+            this.right = right;
+        }
+    }
+
+    private static final class Styled extends Node {
+        final Node inner;
+        final int style;
+
+        Styled(final Node inner, final int style) {
+            this.inner = inner;
+            this.style = style;
+        }
+    }
+
+    private static final class Aligned extends Node {
+        final Node inner;
+
+        Aligned(final Node inner) {
+            this.inner = inner;
+        }
+    }
+
+    private static final class Frame {
+        final Node node;
+        final int style;
+        final boolean aligned;
+
+        Frame(final Node node, final int style, final boolean aligned) {
+            this.node = node;
+            this.style = style;
+            this.aligned = aligned;
         }
     }
 }
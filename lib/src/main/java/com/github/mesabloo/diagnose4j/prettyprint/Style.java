@@ -0,0 +1,59 @@
+package com.github.mesabloo.diagnose4j.prettyprint;
+
+import com.github.tomaslanger.chalk.Ansi;
+
+/**
+ * Styles packed into a single <code>int</code>, so that documents do not need to carry their own lists of attributes.
+ *
+ * The lowest byte holds the foreground color, the next byte holds the background color (both as <code>ordinal + 1</code>,
+ * <code>0</code> meaning that no color is set), and the upper 16 bits form a set of modifiers indexed by their ordinals.
+ * Two equal styles are therefore always represented by the same value.
+ */
+final class Style {
+    static final int NONE = 0;
+    /**
+     * Not a valid style (there are never 255 colors), used to indicate that a document keeps its own style.
+     */
+    static final int INHERIT = -1;
+
+    private static final Ansi.Color[] FG = Ansi.Color.values();
+    private static final Ansi.BgColor[] BG = Ansi.BgColor.values();
+
+    private static final int BG_SHIFT = 8;
+    private static final int MODIFIERS_SHIFT = 16;
+    private static final int COLOR_MASK = 0xFF;
+
+    static {
+        if (FG.length >= COLOR_MASK || BG.length >= COLOR_MASK || Ansi.Modifier.values().length > 32 - MODIFIERS_SHIFT)
+            throw new IllegalStateException("Too many colors or modifiers to pack a style in an int");
+    }
+
+    private Style() {}
+
+    static int of(final Ansi.Color fg, final Ansi.BgColor bg, final Ansi.Modifier... modifiers) {
+        int style = (fg == null ? 0 : fg.ordinal() + 1)
+                | (bg == null ? 0 : bg.ordinal() + 1) << BG_SHIFT;
+        for (final Ansi.Modifier mod : modifiers) {
+            if (mod != null)
+                style |= 1 << (MODIFIERS_SHIFT + mod.ordinal());
+        }
+        return style;
+    }
+
+    static Ansi.Color fg(final int style) {
+        final int index = style & COLOR_MASK;
+        return index == 0 ? null : FG[index - 1];
+    }
+
+    static Ansi.BgColor bg(final int style) {
+        final int index = (style >>> BG_SHIFT) & COLOR_MASK;
+        return index == 0 ? null : BG[index - 1];
+    }
+
+    /**
+     * @return A bit set of modifiers, where bit <code>i</code> stands for the modifier with ordinal <code>i</code>
+     */
+    static int modifiers(final int style) {
+        return style >>> MODIFIERS_SHIFT;
+    }
+}
@@ -0,0 +1,259 @@
+package com.github.mesabloo.diagnose4j.source;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * A file held in memory which can be modified by applying edits to ranges of text, for example while it is being typed
+ * in an editor.
+ *
+ * Lines are kept in a gap buffer: the free slots of the array are kept right where the last edit happened,
+ * so that an edit only costs time proportional to the number of lines it touches, plus the distance to the previous edit.
+ * The offsets of the beginning of lines are kept next to the lines and updated the same way, so that indexing the file
+ * never needs to look at the content of lines.
+ * Every edit increments the {@link #version()} of the file.
+ *
+ * Like {@link MappedSourceFile}, an empty line at the end of the file (after the last newline) is not reported.
+ */
+public final class EditableSourceFile implements SourceFile {
+    private static final int MIN_GAP = 16;
+
+    /**
+     * Lines of the file, where slots from <code>gapStart</code> (included) to <code>gapEnd</code> (excluded) are unused.
+     */
+    private String[] lines;
+    private int gapStart;
+    private int gapEnd;
+
+    /**
+     * For each line of <code>lines</code>, the offset of its beginning if it is before the gap,
+     * or the number of characters from its beginning to the end of the file if it is after the gap,
+     * so that edits do not change any of them besides the ones of the edited lines.
+     */
+    private int[] starts;
+    /**
+     * The number of characters in the file, including newlines.
+     */
+    private int length;
+
+    private long version;
+
+    /**
+     * The index of the lines as of version <code>indexVersion</code>, if computed.
+     */
+    private LineIndex index;
+    private long indexVersion;
+
+    /**
+     * @param content The initial content of the file, where lines are separated by <code>"\n"</code>
+     */
+    public EditableSourceFile(final String content) {
+        final List<String> lines = splitLines(content);
+        this.lines = lines.toArray(new String[lines.size() + MIN_GAP]);
+        this.gapStart = lines.size();
+        this.gapEnd = this.lines.length;
+        this.starts = new int[this.lines.length];
+        this.length = content.length();
+        int offset = 0;
+        for (int i = 0; i < this.gapStart; ++i) {
+            this.starts[i] = offset;
+            offset += this.lines[i].length() + 1;
+        }
+        this.version = 0;
+        this.index = null;
+        this.indexVersion = -1;
+    }
+
+    /**
+     * Creates an editable copy of another file.
+     *
+     * @param file The file to copy, whose content is fetched once as a whole
+     * @return A new editable file with the same lines
+     */
+    public static EditableSourceFile copyOf(final SourceFile file) {
+        if (file instanceof EditableSourceFile)
+            return ((EditableSourceFile) file).copy();
+        if (file instanceof StringSourceFile)
+            return new EditableSourceFile(((StringSourceFile) file).content());
+
+        return new EditableSourceFile(String.join("\n", file.lines(1, Long.MAX_VALUE)));
+    }
+
+    @Override
+    public synchronized Optional<String> line(final long line) {
+        final int size = this.size();
+        if (line < 1 || line > size)
+            return Optional.empty();
+
+        final String content = this.get((int) line - 1);
+        if (line == size && content.isEmpty())
+            return Optional.empty();
+        // nothing after the last newline of the file
+
+        return Optional.of(content);
+    }
+
+    @Override
+    public synchronized List<String> lines(final long first, final long last) {
+        return SourceFile.super.lines(first, last);
+        // fetch all lines at once, so that no edit can happen in between
+    }
+
+    @Override
+    public synchronized long version() {
+        return this.version;
+    }
+
+    @Override
+    public synchronized LineIndex lineIndex() {
+        if (this.index == null || this.indexVersion != this.version) {
+            final int size = this.size();
+            final int[] starts = new int[size];
+            System.arraycopy(this.starts, 0, starts, 0, this.gapStart);
+            for (int i = this.gapStart; i < size; ++i) {
+                starts[i] = this.length - this.starts[i + this.gapEnd - this.gapStart];
+            }
+
+            final boolean trailingEmptyLine = size > 1 && this.get(size - 1).isEmpty();
+            this.index = new LineIndex(starts, trailingEmptyLine ? size - 1 : size);
+            this.indexVersion = this.version;
+        }
+        return this.index;
+    }
+
+    /**
+     * Replaces a range of text with some other text.
+     *
+     * Positions are given like in {@link com.github.mesabloo.diagnose4j.Position}: lines and columns start at 1,
+     * and the character at the end position is not replaced.
+     * Inserting text is done with an empty range, and removing text with an empty replacement.
+     *
+     * @param startLine   The line where the replaced range starts
+     * @param startColumn The column where the replaced range starts
+     * @param endLine     The line where the replaced range ends
+     * @param endColumn   The column right after the end of the replaced range
+     * @param replacement The new text, where lines are separated by <code>"\n"</code>
+     * @return The current file, modified to include the edit
+     * @throws IllegalArgumentException if the range is not in the file
+     */
+    public synchronized EditableSourceFile edit(final long startLine, final long startColumn, final long endLine, final long endColumn, final String replacement) {
+        final int size = this.size();
+        if (startLine < 1 || endLine > size || startLine > endLine || (startLine == endLine && startColumn > endColumn))
+            throw new IllegalArgumentException("Invalid range " + startLine + ":" + startColumn + "-" + endLine + ":" + endColumn + " in a file of " + size + " lines");
+
+        final String first = this.get((int) startLine - 1);
+        final String last = this.get((int) endLine - 1);
+        if (startColumn < 1 || startColumn > first.length() + 1 || endColumn < 1 || endColumn > last.length() + 1)
+            throw new IllegalArgumentException("Invalid range " + startLine + ":" + startColumn + "-" + endLine + ":" + endColumn + " in a file of " + size + " lines");
+
+        final String prefix = first.substring(0, (int) startColumn - 1);
+        final String suffix = last.substring((int) endColumn - 1);
+        final List<String> inserted = splitLines(replacement);
+        final int count = inserted.size();
+        inserted.set(0, prefix + inserted.get(0));
+        inserted.set(count - 1, inserted.get(count - 1) + suffix);
+
+        this.moveGap((int) startLine - 1);
+        final int removed = (int) (endLine - startLine + 1);
+        for (int i = this.gapEnd; i < this.gapEnd + removed; ++i) {
+            this.length -= this.lines[i].length() + 1;
+        }
+        Arrays.fill(this.lines, this.gapEnd, this.gapEnd + removed, null);
+        this.gapEnd += removed;
+
+        this.ensureGap(count);
+        int offset = this.gapStart == 0 ? 0 : this.starts[this.gapStart - 1] + this.lines[this.gapStart - 1].length() + 1;
+        for (final String line : inserted) {
+            this.starts[this.gapStart] = offset;
+            this.lines[this.gapStart++] = line;
+            offset += line.length() + 1;
+        }
+        this.length += offset - this.starts[(int) startLine - 1];
+        // the offsets of the lines after the gap are relative to the end of the file, so they are still correct
+
+        ++this.version;
+        return this;
+    }
+
+    ///////////////////////
+
+    private EditableSourceFile copy() {
+        final List<String> lines;
+        synchronized (this) {
+            lines = new ArrayList<>(this.size());
+            for (int i = 0; i < this.size(); ++i) {
+                lines.add(this.get(i));
+            }
+        }
+        return new EditableSourceFile(String.join("\n", lines));
+    }
+
+    private int size() {
+        return this.lines.length - (this.gapEnd - this.gapStart);
+    }
+
+    private String get(final int index) {
+        return index < this.gapStart ? this.lines[index] : this.lines[index + this.gapEnd - this.gapStart];
+    }
+
+    /**
+     * Moves the gap so that it starts right before the line at the given index.
+     */
+    private void moveGap(final int index) {
+        if (index < this.gapStart) {
+            final int moved = this.gapStart - index;
+            for (int i = this.gapStart - 1; i >= index; --i) {
+                this.starts[i + this.gapEnd - this.gapStart] = this.length - this.starts[i];
+            }
+            // backwards, as the moved offsets may overlap their previous place when the gap is small
+            System.arraycopy(this.lines, index, this.lines, this.gapEnd - moved, moved);
+            Arrays.fill(this.lines, index, Math.min(this.gapStart, this.gapEnd - moved), null);
+            this.gapStart -= moved;
+            this.gapEnd -= moved;
+        } else if (index > this.gapStart) {
+            final int moved = index - this.gapStart;
+            for (int i = this.gapStart; i < index; ++i) {
+                this.starts[i] = this.length - this.starts[i + this.gapEnd - this.gapStart];
+            }
+            System.arraycopy(this.lines, this.gapEnd, this.lines, this.gapStart, moved);
+            Arrays.fill(this.lines, Math.max(this.gapEnd, index), this.gapEnd + moved, null);
+            this.gapStart += moved;
+            this.gapEnd += moved;
+        }
+    }
+
+    private void ensureGap(final int needed) {
+        if (this.gapEnd - this.gapStart >= needed)
+            return;
+
+        final int size = this.size();
+        final String[] lines = new String[Math.max(2 * this.lines.length, size + needed + MIN_GAP)];
+        final int[] starts = new int[lines.length];
+        final int after = this.lines.length - this.gapEnd;
+        System.arraycopy(this.lines, 0, lines, 0, this.gapStart);
+        System.arraycopy(this.lines, this.gapEnd, lines, lines.length - after, after);
+        System.arraycopy(this.starts, 0, starts, 0, this.gapStart);
+        System.arraycopy(this.starts, this.gapEnd, starts, starts.length - after, after);
+        this.gapEnd = lines.length - after;
+        this.lines = lines;
+        this.starts = starts;
+    }
+
+    /**
+     * Splits some text on newlines, keeping all empty lines.
+     */
+    private static List<String> splitLines(final String text) {
+        final List<String> lines = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < text.length(); ++i) {
+            if (text.charAt(i) == '\n') {
+                lines.add(text.substring(start, i));
+                start = i + 1;
+            }
+        }
+        lines.add(text.substring(start));
+        return lines;
+    }
+}
@@ -0,0 +1,57 @@
+package com.github.mesabloo.diagnose4j.source;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reads files from the file system, relatively to a root directory.
+ *
+ * A file is only mapped into memory the first time one of its lines is requested (see {@link MappedSourceFile}).
+ * Files which do not exist are reported as unknown, so that other providers can be tried.
+ */
+public final class FileSystemSourceProvider implements SourceProvider {
+    private final Path root;
+    private final Map<String, Optional<SourceFile>> loaded;
+
+    /**
+     * @param root The directory against which file names in reports are resolved
+     */
+    public FileSystemSourceProvider(final Path root) {
+        this.root = root;
+        this.loaded = new ConcurrentHashMap<>();
+    }
+
+    @Override
+    public Optional<String> line(final String file, final long line) {
+        return this.loaded.computeIfAbsent(file, this::load)
+                .flatMap(source -> source.line(line));
+    }
+
+    @Override
+    public List<String> lines(final String file, final long first, final long last) {
+        return this.loaded.computeIfAbsent(file, this::load)
+                .map(source -> source.lines(first, last))
+                .orElseGet(Collections::emptyList);
+    }
+
+    /**
+     * Forgets about all files read until now.
+     */
+    public void clear() {
+        this.loaded.clear();
+    }
+
+    private Optional<SourceFile> load(final String file) {
+        final Path path = this.root.resolve(file);
+        try {
+            return Files.isRegularFile(path) ? Optional.of(new MappedSourceFile(path)) : Optional.empty();
+        } catch (SecurityException e) {
+            return Optional.empty();
+        }
+    }
+}
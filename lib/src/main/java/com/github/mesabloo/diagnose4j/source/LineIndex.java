@@ -0,0 +1,99 @@
+package com.github.mesabloo.diagnose4j.source;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * The offsets at which the lines of a file start, used to convert character offsets to lines and columns.
+ *
+ * Offsets count UTF-16 characters from the beginning of the file, and every line is followed by a single
+ * <code>'\n'</code> character.
+ * Conversions are binary searches in a sorted array, so they take logarithmic time in the number of lines.
+ */
+public final class LineIndex {
+    private final int[] lineStarts;
+    private final int count;
+
+    /**
+     * @param lineStarts The offsets of the beginning of each line, in increasing order, which must not be modified later
+     * @param count      The number of lines, at most the length of the array
+     */
+    LineIndex(final int[] lineStarts, final int count) {
+        this.lineStarts = lineStarts;
+        this.count = Math.max(1, count);
+    }
+
+    /**
+     * Indexes a file by fetching all its lines once.
+     *
+     * @param file The file to index
+     * @return The index of the lines of the file
+     */
+    public static LineIndex of(final SourceFile file) {
+        int[] starts = new int[16];
+        int count = 0;
+        int offset = 0;
+
+        for (final String line : file.lines(1, Integer.MAX_VALUE)) {
+            if (count == starts.length)
+                starts = Arrays.copyOf(starts, 2 * count);
+            starts[count++] = offset;
+            offset += line.length() + 1;
+        }
+        return new LineIndex(starts, count);
+    }
+
+    /**
+     * Indexes the beginning of a file, by fetching its lines until the one containing the given offset.
+     *
+     * Only offsets up to the given one (included) can be converted with the returned index;
+     * larger offsets are converted as if they were in the last line fetched.
+     *
+     * @param file   The file to index
+     * @param offset The largest offset to convert, starting at 0
+     * @return The index of the lines of the file up to the given offset
+     */
+    public static LineIndex of(final SourceFile file, final long offset) {
+        int[] starts = new int[16];
+        int count = 0;
+        long start = 0;
+
+        for (long n = 1; start <= offset && start <= Integer.MAX_VALUE; ++n) {
+            final Optional<String> line = file.line(n);
+            if (!line.isPresent())
+                break;
+
+            if (count == starts.length)
+                starts = Arrays.copyOf(starts, 2 * count);
+            starts[count++] = (int) start;
+            start += line.get().length() + 1;
+        }
+        return new LineIndex(starts, count);
+    }
+
+    /**
+     * @param offset A character offset, starting at 0
+     * @return The line containing the character at this offset, starting at 1
+     */
+    public long line(final long offset) {
+        return this.indexOf(offset) + 1;
+    }
+
+    /**
+     * @param offset A character offset, starting at 0
+     * @return The column of the character at this offset in its line, starting at 1
+     */
+    public long column(final long offset) {
+        return offset - this.lineStarts[this.indexOf(offset)] + 1;
+    }
+
+    private int indexOf(final long offset) {
+        if (offset <= 0)
+            return 0;
+
+        final int key = (int) Math.min(offset, Integer.MAX_VALUE);
+        final int found = Arrays.binarySearch(this.lineStarts, 0, this.count, key);
+        return found >= 0 ? found : -found - 2;
+        // when not found, the offset is inside the line before the insertion point
+    }
+}
@@ -0,0 +1,156 @@
+package com.github.mesabloo.diagnose4j.source;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * A UTF-8 encoded file on disk, mapped into memory the first time one of its lines is requested.
+ *
+ * The file is never copied onto the heap as a whole.
+ * Offsets of the beginning of lines are recorded while scanning the file, but the scan stops as soon as the requested
+ * line is found, and only requested lines are decoded to strings.
+ *
+ * Unlike {@link StringSourceFile}, empty lines at the end of the file are kept.
+ * A file which cannot be read, or which is larger than 2 GiB, is treated as empty.
+ */
+public final class MappedSourceFile implements SourceFile {
+    private final Path path;
+
+    private ByteBuffer content;
+    private boolean failed;
+
+    /**
+     * The offsets of the beginning of the first <code>lineCount</code> lines.
+     */
+    private int[] lineStarts;
+    private int lineCount;
+
+    /**
+     * The offset up to which the content has been scanned for newlines.
+     */
+    private int scanned;
+
+    private volatile LineIndex index;
+
+    /**
+     * @param path The path of the file to read
+     */
+    public MappedSourceFile(final Path path) {
+        this.path = path;
+        this.content = null;
+        this.failed = false;
+        this.lineStarts = new int[]{0};
+        this.lineCount = 1;
+        this.scanned = 0;
+        this.index = null;
+    }
+
+    @Override
+    public Optional<String> line(final long line) {
+        if (line < 1 || line >= Integer.MAX_VALUE)
+            return Optional.empty();
+
+        final ByteBuffer slice;
+        synchronized (this) {
+            final ByteBuffer content = this.content();
+            if (content == null || !this.scanUntil((int) line))
+                return Optional.empty();
+
+            final int start = this.lineStarts[(int) line - 1];
+            final int end = line < this.lineCount ? this.lineStarts[(int) line] - 1 : content.limit();
+            if (start == end && line == this.lineCount)
+                return Optional.empty();
+            // nothing after the last newline of the file
+
+            slice = content.duplicate();
+            slice.position(start);
+            slice.limit(end);
+        }
+
+        return Optional.of(StandardCharsets.UTF_8.decode(slice).toString());
+    }
+
+    @Override
+    public LineIndex lineIndex() {
+        LineIndex index = this.index;
+        if (index == null) {
+            index = this.indexLines();
+            this.index = index;
+            // computing it twice in case of a race is harmless
+        }
+        return index;
+    }
+
+    /**
+     * Indexes the lines of the file in a single pass over its bytes, without decoding them to strings.
+     *
+     * Offsets count UTF-16 characters, so each byte is counted as the number of characters it starts once decoded:
+     * none for continuation bytes, two for the first byte of a 4-byte sequence (a surrogate pair), and one otherwise.
+     * Malformed sequences may therefore be counted differently than they are decoded in {@link #line(long)}.
+     */
+    private synchronized LineIndex indexLines() {
+        final ByteBuffer content = this.content();
+        if (content == null)
+            return new LineIndex(new int[]{0}, 1);
+
+        final int size = content.limit();
+        int[] starts = new int[16];
+        int count = 1;
+        int offset = 0;
+
+        for (int i = 0; i < size; ++i) {
+            final int b = content.get(i) & 0xFF;
+            if (b == '\n') {
+                if (count == starts.length)
+                    starts = Arrays.copyOf(starts, 2 * count);
+                starts[count++] = offset + 1;
+            }
+            offset += b < 0x80 ? 1 : b < 0xC0 ? 0 : b < 0xF0 ? 1 : 2;
+        }
+        if (size > 0 && content.get(size - 1) == '\n')
+            --count;
+        // nothing after the last newline of the file, so there is no line there
+
+        return new LineIndex(starts, count);
+    }
+
+    /**
+     * Scans the content for newlines until the end of the given line is known.
+     *
+     * @return Whether the file contains the line
+     */
+    private boolean scanUntil(final int line) {
+        final ByteBuffer content = this.content;
+        final int size = content.limit();
+
+        while (this.lineCount <= line && this.scanned < size) {
+            if (content.get(this.scanned) == '\n') {
+                if (this.lineCount == this.lineStarts.length)
+                    this.lineStarts = Arrays.copyOf(this.lineStarts, this.lineCount * 2);
+                this.lineStarts[this.lineCount++] = this.scanned + 1;
+            }
+            ++this.scanned;
+        }
+        // a newline byte never appears inside a multi-byte UTF-8 sequence, so there is no need to decode anything
+
+        return line <= this.lineCount;
+    }
+
+    private ByteBuffer content() {
+        if (this.content == null && !this.failed) {
+            try (final FileChannel channel = FileChannel.open(this.path, StandardOpenOption.READ)) {
+                this.content = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                // the mapping stays valid after the channel is closed
+            } catch (IOException | IllegalArgumentException | SecurityException e) {
+                this.failed = true;
+            }
+        }
+        return this.content;
+    }
+}
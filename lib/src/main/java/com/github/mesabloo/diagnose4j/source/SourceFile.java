@@ -0,0 +1,57 @@
+package com.github.mesabloo.diagnose4j.source;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The content of a single file, whose lines are only computed when requested.
+ */
+public interface SourceFile {
+    /**
+     * Fetches a single line of the file.
+     *
+     * @param line The number of the line, starting at 1
+     * @return The content of the line without its trailing newline, or nothing if the file does not contain the line
+     */
+    Optional<String> line(final long line);
+
+    /**
+     * A number which changes every time the content of the file changes, used to know when cached renderings are stale.
+     * Files whose content never changes may keep the default implementation.
+     *
+     * @return The current version of the content
+     */
+    default long version() {
+        return 0;
+    }
+
+    /**
+     * Indexes the lines of the file, to convert character offsets to lines and columns.
+     * The default implementation fetches all the lines of the file every time it is called;
+     * implementations are encouraged to cache the index as long as the content does not change.
+     *
+     * @return The index of the lines of the current content of the file
+     */
+    default LineIndex lineIndex() {
+        return LineIndex.of(this);
+    }
+
+    /**
+     * Fetches a range of lines of the file.
+     *
+     * @param first The first line to fetch, starting at 1
+     * @param last  The last line to fetch (included)
+     * @return All the lines in the range, stopping at the first line which could not be found
+     */
+    default List<String> lines(final long first, final long last) {
+        final List<String> lines = new ArrayList<>();
+        for (long n = first; n <= last; ++n) {
+            final Optional<String> line = this.line(n);
+            if (!line.isPresent())
+                break;
+            lines.add(line.get());
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,58 @@
+package com.github.mesabloo.diagnose4j.source;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Gives access to the lines of the files referenced in reports.
+ *
+ * Providers are only queried when a report referencing a file is rendered, and only for the lines which are shown.
+ * Any function from a file name and a line number to the content of that line can be used as a provider, for example:
+ * <pre><code>
+ * diagnostic.withSourceProvider((file, line) -&gt; editor.buffer(file).map(b -&gt; b.line(line)));
+ * </code></pre>
+ */
+@FunctionalInterface
+public interface SourceProvider {
+    /**
+     * Fetches a single line of a file.
+     *
+     * @param file The name of the file, as found in the positions of markers
+     * @param line The number of the line, starting at 1
+     * @return The content of the line without its trailing newline,
+     *         or nothing if the file is unknown or does not contain the line
+     */
+    Optional<String> line(final String file, final long line);
+
+    /**
+     * Fetches a range of lines of a file.
+     *
+     * @param file  The name of the file, as found in the positions of markers
+     * @param first The first line to fetch, starting at 1
+     * @param last  The last line to fetch (included)
+     * @return All the lines in the range, stopping at the first line which could not be found
+     */
+    default List<String> lines(final String file, final long first, final long last) {
+        final List<String> lines = new ArrayList<>();
+        for (long n = first; n <= last; ++n) {
+            final Optional<String> line = this.line(file, n);
+            if (!line.isPresent())
+                break;
+            lines.add(line.get());
+        }
+        return lines;
+    }
+
+    /**
+     * Creates a provider from files which have already been split into lines.
+     *
+     * @param files The lines of each file
+     */
+    static SourceProvider of(final Map<String, List<String>> files) {
+        return (file, line) -> Optional.ofNullable(files.get(file))
+                .filter(lines -> line >= 1 && line <= lines.size())
+                .map(lines -> lines.get((int) line - 1));
+    }
+}
@@ -0,0 +1,101 @@
+package com.github.mesabloo.diagnose4j.source;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * A file whose content is held in memory as a single string.
+ *
+ * The content is not split: the offsets where lines start are only computed the first time a line is requested,
+ * and lines are extracted from the content on demand.
+ */
+public final class StringSourceFile implements SourceFile {
+    private final String content;
+
+    /**
+     * The offsets of the beginning of each line, plus the offset of the end of the last line.
+     * Only computed on first access.
+     */
+    private volatile int[] lineStarts;
+
+    /**
+     * @param content The content of the file, where lines are separated by <code>"\n"</code>
+     */
+    public StringSourceFile(final String content) {
+        this.content = content;
+        this.lineStarts = null;
+    }
+
+    @Override
+    public Optional<String> line(final long line) {
+        final int[] starts = this.lineStarts();
+        if (line < 1 || line >= starts.length)
+            return Optional.empty();
+
+        final int start = starts[(int) line - 1];
+        final int end = starts[(int) line] - 1;
+        // the next line starts right after the newline ending this one
+        return Optional.of(this.content.substring(start, Math.max(start, end)));
+    }
+
+    @Override
+    public LineIndex lineIndex() {
+        final int[] starts = this.lineStarts();
+        return new LineIndex(starts, starts.length - 1);
+        // the last offset is the end of the content, not the start of a line
+    }
+
+    /**
+     * @return The content of the file up to the end of its last line,
+     *         without the trailing empty lines which are not reported as lines of the file
+     */
+    String content() {
+        final int[] starts = this.lineStarts();
+        return this.content.substring(0, Math.min(this.content.length(), starts[starts.length - 1]));
+    }
+
+    private int[] lineStarts() {
+        int[] starts = this.lineStarts;
+        if (starts == null) {
+            starts = indexLines(this.content);
+            this.lineStarts = starts;
+            // computing the index twice in case of a race is harmless, as both results are identical
+        }
+        return starts;
+    }
+
+    /**
+     * Computes where each line of the content starts.
+     *
+     * Lines are the same as the ones returned by <code>content.split("\n")</code>: trailing empty lines are ignored.
+     *
+     * @return An array containing the offsets of the beginning of each line,
+     *         followed by the offset right after the end of the last line (including its newline, if any)
+     */
+    static int[] indexLines(final CharSequence content) {
+        final int length = content.length();
+        int[] starts = new int[16];
+        int count = 0;
+
+        starts[count++] = 0;
+        for (int i = 0; i < length; ++i) {
+            if (content.charAt(i) == '\n') {
+                if (count == starts.length)
+                    starts = Arrays.copyOf(starts, count * 2);
+                starts[count++] = i + 1;
+            }
+        }
+        if (count == starts.length)
+            starts = Arrays.copyOf(starts, count + 1);
+        starts[count] = length + 1;
+        // pretend there is a final newline after the last line
+
+        int lines = count;
+        while (lines > 0 && length > 0 && starts[lines] - starts[lines - 1] <= 1) {
+            --lines;
+        }
+        // drop trailing empty lines, as String#split does (unless the whole content is empty)
+
+        return Arrays.copyOf(starts, lines + 1);
+    }
+}
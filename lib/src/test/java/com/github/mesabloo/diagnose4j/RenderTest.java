@@ -2,14 +2,34 @@ package com.github.mesabloo.diagnose4j;
 
 import com.github.mesabloo.diagnose4j.instances.StringPretty;
 import com.github.mesabloo.diagnose4j.report.Marker;
+import com.github.mesabloo.diagnose4j.source.EditableSourceFile;
+import com.github.mesabloo.diagnose4j.source.SourceFile;
+import com.github.mesabloo.diagnose4j.source.StringSourceFile;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
 
 public class RenderTest {
     private static final Map<String, String> files = new HashMap<>();
@@ -17,6 +37,7 @@ public class RenderTest {
         files.put("test.zc", "let id<a>(x : a) : a := x + 1\nrec fix(f) := f(fix(f))\nlet const<a, b>(x : a, y : b) : a := x");
         files.put("somefile.zc", "let id<a>(x : a) : a := x + 1\nrec fix(f) := f(fix(f))\nlet const<a, b>(x : a, y : b) : a := x");
         files.put("err.nst", "\n\n\n\n    = jmp g\n\n    g: forall(s: Ts, e: Tc).{ %r0: *s64 | s -> e }");
+        files.put("long.zc", String.join("\n", Collections.nCopies(40, "let x := f(x) + g(x)")));
         files.put("unsized.nst", "main: forall(a: Ta, s: Ts, e: Tc).{ %r5: forall().{| s -> e } | s -> %r5 }\n    = salloc a\n    ; sfree\\n");
     }
 
@@ -32,6 +53,27 @@ public class RenderTest {
         System.out.println("-------------------------------------------------------");
     }
 
+    /**
+     * @return What the diagnostic prints with the given options
+     */
+    private static String printed(final Diagnostic<StringPretty> diagnostic, final RenderOptions options) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        diagnostic.print(new PrintStream(out, true, "UTF-8"), options);
+        return out.toString("UTF-8");
+    }
+
+    /**
+     * @return The header lines of all the reports in some uncolored output, in order
+     */
+    private static List<String> headers(final String output) {
+        final List<String> headers = new ArrayList<>();
+        for (final String line : output.split("\n")) {
+            if (line.startsWith("["))
+                headers.add(line);
+        }
+        return headers;
+    }
+
     @After
     public void tearDown() {
         System.out.println("--- With Unicode ---");
@@ -144,4 +186,458 @@ public class RenderTest {
                             );
                         }}));
     }
+
+    @Test
+    public void elidedMultilineMarker() {
+        diag = diag
+                .withReport(new Report<>(true, new StringPretty("Error on a very long definition"),
+                        new LinkedHashMap<Position, Marker<StringPretty>>() {{
+                            this.put(
+                                    new Position(2, 5, 38, 10, "long.zc"),
+                                    new Marker.This<>(new StringPretty("This definition spans a lot of lines"))
+                            );
+                            this.put(
+                                    new Position(2, 12, 2, 14, "long.zc"),
+                                    new Marker.Where<>(new StringPretty("Some marker on the first line"))
+                            );
+                        }}));
+
+        System.out.println("--- With 3 lines at both ends of multiline markers ---");
+        diag.print(System.out, RenderOptions.defaults().withMultilineElision(3));
+    }
+
+    @Test
+    public void elidedOverlappingMarkers() {
+        diag = diag
+                .withFile("longer.zc", String.join("\n", Collections.nCopies(100, "let x := f(x) + g(x)")))
+                .withReport(new Report.Builder<StringPretty>(true, new StringPretty("Error on overlapping definitions"))
+                        .withMarker(new Position(10, 5, 60, 6, "longer.zc"), new Marker.This<>(new StringPretty("Outer definition")))
+                        .withMarker(new Position(30, 10, 30, 14, "longer.zc"), new Marker.Where<>(new StringPretty("Used in the middle")))
+                        .withMarker(new Position(40, 1, 90, 4, "longer.zc"), new Marker.Maybe<>(new StringPretty("Overlapping definition")))
+                        .build());
+
+        System.out.println("--- With 2 lines at both ends of multiline markers ---");
+        diag.print(System.out, RenderOptions.defaults().withMultilineElision(2));
+    }
+
+    @Test
+    public void lazilyProvidedSources() {
+        diag = diag
+                .withSourceProvider((file, line) -> file.equals("generated.zc") ? Optional.of("let generated" + line + " := " + line) : Optional.empty())
+                .withReport(new Report<>(false, new StringPretty("Warning in a file provided on demand"),
+                        new LinkedHashMap<Position, Marker<StringPretty>>() {{
+                            this.put(
+                                    new Position(12, 5, 12, 16, "generated.zc"),
+                                    new Marker.This<>(new StringPretty("Unused definition"))
+                            );
+                        }}));
+    }
+
+    @Test
+    public void memoryMappedFile() throws IOException {
+        final Path file = Files.createTempFile("diagnose4j", ".zc");
+        file.toFile().deleteOnExit();
+        Files.write(file, files.get("test.zc").getBytes(StandardCharsets.UTF_8));
+
+        diag = diag
+                .withFile("mapped.zc", file)
+                .withReport(new Report<>(true, new StringPretty("Error in a file read from the disk"),
+                        new LinkedHashMap<Position, Marker<StringPretty>>() {{
+                            this.put(
+                                    new Position(2, 15, 2, 24, "mapped.zc"),
+                                    new Marker.This<>(new StringPretty("Infinite recursion"))
+                            );
+                        }}));
+    }
+
+    @Test
+    public void parallelRendering() throws IOException {
+        for (int i = 1; i <= 3; ++i) {
+            final int line = i;
+            diag = diag
+                    .withReport(new Report<>(true, new StringPretty("Error #" + i + ", printed in insertion order"),
+                            new LinkedHashMap<Position, Marker<StringPretty>>() {{
+                                this.put(
+                                        new Position(line, 1, line, 4, "test.zc"),
+                                        new Marker.This<>(new StringPretty("Marker on line " + line))
+                                );
+                            }}));
+        }
+
+        System.out.println("--- Rendered in parallel ---");
+        diag.print(System.out, RenderOptions.defaults(), ForkJoinPool.commonPool());
+
+        Diagnostic<StringPretty> many = new Diagnostic<StringPretty>()
+                .withFile("long.zc", files.get("long.zc"));
+        for (int i = 0; i < 200; ++i) {
+            final int line = i % 40 + 1;
+            many = many
+                    .withReport(new Report.Builder<StringPretty>(i % 3 != 0, new StringPretty("Report #" + i))
+                            .withMarker(new Position(line, 1 + i % 7, Math.min(40, line + i % 3), 9 + i % 5, "long.zc"), new Marker.This<>(new StringPretty("Marker #" + i)))
+                            .withHint(new StringPretty("Hint #" + i))
+                            .build());
+        }
+
+        final ByteArrayOutputStream sequential = new ByteArrayOutputStream();
+        many.print(new PrintStream(sequential, true, "UTF-8"), RenderOptions.defaults());
+        final ByteArrayOutputStream parallel = new ByteArrayOutputStream();
+        many.print(new PrintStream(parallel, true, "UTF-8"), RenderOptions.defaults(), ForkJoinPool.commonPool());
+        assertArrayEquals(sequential.toByteArray(), parallel.toByteArray());
+    }
+
+    @Test
+    public void streamedReports() {
+        System.out.println("--- Streamed ---");
+        try (final DiagnosticSink<StringPretty> sink = diag.streamTo(System.out, true, true)) {
+            for (int i = 1; i <= 3; ++i) {
+                final int line = i;
+                sink.withReport(new Report<>(false, new StringPretty("Warning #" + i + ", printed right away"),
+                        new LinkedHashMap<Position, Marker<StringPretty>>() {{
+                            this.put(
+                                    new Position(line, 1, line, 4, "somefile.zc"),
+                                    new Marker.This<>(new StringPretty("Marker on line " + line))
+                            );
+                        }}));
+            }
+        }
+    }
+
+    @Test
+    public void cachedRendering() {
+        final RenderCache cache = new RenderCache(2);
+        final SourceFile first = new StringSourceFile(files.get("test.zc"));
+        diag = diag
+                .withRenderCache(cache)
+                .withFile("test.zc", first)
+                .withReport(new Report<>(true, new StringPretty("Error rendered only once per version of the file"),
+                        new LinkedHashMap<Position, Marker<StringPretty>>() {{
+                            this.put(
+                                    new Position(1, 1, 1, 4, "test.zc"),
+                                    new Marker.This<>(new StringPretty("Cached marker"))
+                            );
+                        }}));
+        diag.print(System.out, true, true);
+        diag.print(System.out, true, false);
+        diag = diag.withFile("test.zc", "let x = 0 in x");
+        diag.print(System.out, true, true);
+        assertEquals(1, cache.hits());
+        assertEquals(2, cache.misses());
+        // colors are applied when printing, so the second rendering is a hit
+
+        diag = diag.editFile("test.zc", 1, 5, 1, 6, "y");
+        diag.print(System.out, true, true);
+        assertEquals(1, cache.hits());
+        assertEquals(3, cache.misses());
+        assertEquals(2, cache.size());
+
+        diag = diag.withFile("test.zc", first);
+        diag.print(System.out, true, true);
+        assertEquals(1, cache.hits());
+        assertEquals(4, cache.misses());
+        // the first rendering was the least recently used one, so it was evicted when the cache went past 2 entries
+    }
+
+    @Test
+    public void editedFile() {
+        diag = diag
+                .editFile("test.zc", 1, 5, 1, 7, "identity")
+                .withReport(new Report<>(true, new StringPretty("Error in an edited file"),
+                        new LinkedHashMap<Position, Marker<StringPretty>>() {{
+                            this.put(
+                                    new Position(1, 5, 1, 13, "test.zc"),
+                                    new Marker.This<>(new StringPretty("Renamed just now"))
+                            );
+                        }}));
+    }
+
+    @Test
+    public void editedFileWithTrailingBlankLines() {
+        final SourceFile original = new StringSourceFile("let x = 0\nin x\n\n\n");
+        final EditableSourceFile file = EditableSourceFile.copyOf(original);
+        assertEquals(original.lines(1, Long.MAX_VALUE), file.lines(1, Long.MAX_VALUE));
+        // blank lines at the end of the file are not reported before the first edit, nor after it
+
+        file.edit(1, 5, 1, 6, "y");
+        assertEquals(Arrays.asList("let y = 0", "in x"), file.lines(1, Long.MAX_VALUE));
+    }
+
+    @Test
+    public void editsAcrossLines() {
+        final EditableSourceFile file = new EditableSourceFile("let x =\n  f(a,\n    b)\nin x");
+
+        file.edit(2, 5, 3, 6, "a, b");
+        assertEquals(Arrays.asList("let x =", "  f(a, b)", "in x"), file.lines(1, Long.MAX_VALUE));
+
+        file.edit(1, 8, 2, 3, " g(0)\n  ; ");
+        assertEquals(Arrays.asList("let x = g(0)", "  ; f(a, b)", "in x"), file.lines(1, Long.MAX_VALUE));
+        assertEquals(2, file.version());
+    }
+
+    @Test
+    public void editsAtFileBoundaries() {
+        final EditableSourceFile file = new EditableSourceFile("let x = 0\nin x");
+
+        file.edit(1, 1, 1, 1, "-- first line\n");
+        file.edit(3, 5, 3, 5, "\n-- last line");
+        assertEquals(Arrays.asList("-- first line", "let x = 0", "in x", "-- last line"), file.lines(1, Long.MAX_VALUE));
+
+        assertThrows(IllegalArgumentException.class, () -> file.edit(0, 1, 1, 1, ""));
+        assertThrows(IllegalArgumentException.class, () -> file.edit(4, 1, 5, 1, ""));
+        assertThrows(IllegalArgumentException.class, () -> file.edit(4, 1, 4, 15, ""));
+    }
+
+    @Test
+    public void editsWithEmptyReplacement() {
+        final EditableSourceFile file = new EditableSourceFile("let x = 0\nlet y = 1\nin x + y");
+
+        file.edit(1, 10, 2, 10, "");
+        assertEquals(Arrays.asList("let x = 0", "in x + y"), file.lines(1, Long.MAX_VALUE));
+
+        file.edit(2, 5, 2, 9, "");
+        assertEquals(Arrays.asList("let x = 0", "in x"), file.lines(1, Long.MAX_VALUE));
+
+        file.edit(1, 1, 2, 5, "");
+        assertEquals(Collections.emptyList(), file.lines(1, Long.MAX_VALUE));
+    }
+
+    @Test
+    public void editsMovingTheGap() {
+        final List<String> expected = new ArrayList<>(Collections.nCopies(100, "line"));
+        final EditableSourceFile file = new EditableSourceFile(String.join("\n", expected));
+
+        final Random random = new Random(42);
+        for (int i = 0; i < 200; ++i) {
+            final int first = random.nextInt(expected.size());
+            final int last = Math.min(expected.size() - 1, first + random.nextInt(3));
+            final String replacement = random.nextBoolean() ? "edit " + i : "edit " + i + "\nline " + i + "\nline";
+            // edits jump back and forth in the file, so the gap has to move in both directions
+
+            final String merged = expected.get(first).substring(0, 2) + replacement + expected.get(last).substring(2);
+            expected.subList(first, last + 1).clear();
+            expected.addAll(first, Arrays.asList(merged.split("\n")));
+
+            file.edit(first + 1, 3, last + 1, 3, replacement);
+            assertEquals(expected, file.lines(1, Long.MAX_VALUE));
+        }
+    }
+
+    @Test
+    public void builtReport() {
+        diag = diag
+                .withReport(new Report.Builder<StringPretty>(false, new StringPretty("Warning built marker by marker"))
+                        .withMarker(new Position(3, 5, 3, 10, "test.zc"), new Marker.Where<>(new StringPretty("Inserted first, shown last")))
+                        .withMarker(new Position(1, 5, 1, 7, "test.zc"), new Marker.This<>(new StringPretty("Inserted last, shown first")))
+                        .withHint(new StringPretty("Markers are sorted once, when the report is built"))
+                        .build());
+    }
+
+    @Test
+    public void offsetPositions() {
+        diag = diag
+                .withReport(new Report.Builder<StringPretty>(true, new StringPretty("Error located by character offsets"))
+                        .withMarker(Position.fromOffsets(44, 53, "test.zc"), new Marker.This<>(new StringPretty("Infinite recursion")))
+                        .withMarker(Position.fromOffsets(34, 37, "test.zc"), new Marker.Where<>(new StringPretty("Defined here")))
+                        .build());
+    }
+
+    @Test
+    public void tabsAndWideCharacters() {
+        diag = diag
+                .withFile("wide.zc", "\tlet 名前 = \"値\" in 名前")
+                .withReport(new Report.Builder<StringPretty>(true, new StringPretty("Error on a line with tabs and wide characters"))
+                        .withMarker(new Position(1, 6, 1, 8, "wide.zc"), new Marker.This<>(new StringPretty("Two columns per character")))
+                        .withMarker(new Position(1, 11, 1, 14, "wide.zc"), new Marker.Where<>(new StringPretty("After a tab and wide characters")))
+                        .build());
+    }
+
+    @Test
+    public void windowedLongLine() {
+        final StringBuilder code = new StringBuilder("let f = ");
+        for (int i = 0; i < 40; ++i) {
+            code.append("1 + ");
+        }
+        final int column = code.length() + 1;
+        code.append("undefined_name");
+        for (int i = 0; i < 20; ++i) {
+            code.append(" + 2");
+        }
+
+        diag = diag
+                .withFile("minified.zc", code.toString())
+                .withReport(new Report.Builder<StringPretty>(true, new StringPretty("Error far into a long line"))
+                        .withMarker(new Position(1, column, 1, column + 14, "minified.zc"), new Marker.This<>(new StringPretty("Unknown name")))
+                        .withMarker(new Position(1, column - 4, 1, column - 3, "minified.zc"), new Marker.Where<>(new StringPretty("Left operand")))
+                        .build());
+
+        System.out.println("--- At most 40 characters per line ---");
+        diag.print(System.out, RenderOptions.defaults().withWidth(40));
+        diag.print(System.out, RenderOptions.defaults().withUnicode(false).withWidth(40));
+    }
+
+    @Test
+    public void windowedLongLineWithTabsAndWideCharacters() {
+        final StringBuilder code = new StringBuilder();
+        for (int i = 0; i < 50; ++i) {
+            code.append("名\t");
+        }
+
+        diag = diag
+                .withFile("wide.zc", code.toString())
+                .withReport(new Report.Builder<StringPretty>(true, new StringPretty("Error far into a line of tabs and wide characters"))
+                        .withMarker(new Position(1, 61, 1, 62, "wide.zc"), new Marker.This<>(new StringPretty("Two columns wide")))
+                        .build());
+
+        System.out.println("--- At most 40 columns per line ---");
+        diag.print(System.out, RenderOptions.defaults().withWidth(40));
+        diag.print(System.out, RenderOptions.defaults().withUnicode(false).withWidth(40));
+    }
+
+    @Test
+    public void contextLines() {
+        diag = diag
+                .withReport(new Report.Builder<StringPretty>(true, new StringPretty("Error with surrounding code"))
+                        .withMarker(new Position(10, 5, 10, 6, "long.zc"), new Marker.This<>(new StringPretty("First use")))
+                        .withMarker(new Position(13, 17, 13, 21, "long.zc"), new Marker.Where<>(new StringPretty("Close enough to share context")))
+                        .build());
+
+        System.out.println("--- With 2 lines of context ---");
+        diag.print(System.out, RenderOptions.defaults().withContextLines(2));
+    }
+
+    @Test
+    public void contextLinesAroundElidedMarkers() {
+        diag = diag
+                .withFile("longer.zc", String.join("\n", Collections.nCopies(100, "let x := f(x) + g(x)")))
+                .withReport(new Report.Builder<StringPretty>(true, new StringPretty("Error on overlapping definitions"))
+                        .withMarker(new Position(10, 5, 60, 6, "longer.zc"), new Marker.This<>(new StringPretty("Outer definition")))
+                        .withMarker(new Position(30, 10, 30, 14, "longer.zc"), new Marker.Where<>(new StringPretty("Used in the middle")))
+                        .build());
+
+        System.out.println("--- With 2 lines at both ends of multiline markers and 1 line of context ---");
+        diag.print(System.out, RenderOptions.defaults().withMultilineElision(2).withContextLines(1));
+    }
+
+    @Test
+    public void contextLinesWiderThanMarkers() {
+        diag = diag
+                .withFile("thousand.zc", String.join("\n", Collections.nCopies(1001, "let x := f(x) + g(x)")))
+                .withReport(new Report.Builder<StringPretty>(true, new StringPretty("Error right before line 1000"))
+                        .withMarker(new Position(999, 10, 999, 14, "thousand.zc"), new Marker.This<>(new StringPretty("Line numbers get wider after this one")))
+                        .build());
+
+        System.out.println("--- With 2 lines of context ---");
+        diag.print(System.out, RenderOptions.defaults().withContextLines(2));
+    }
+
+    @Test
+    public void machineReadableOutput() {
+        diag = diag
+                .withReport(new Report.Builder<StringPretty>(true, new StringPretty("Error with \"quotes\"\nand a newline"))
+                        .withMarker(Position.fromOffsets(44, 53, "test.zc"), new Marker.This<>(new StringPretty("Infinite recursion")))
+                        .withMarker(new Position(1, 5, 1, 7, "test.zc"), new Marker.Where<>(new StringPretty("Defined here")))
+                        .withHint(new StringPretty("Add a base case"))
+                        .build())
+                .withReport(new Report.Builder<StringPretty>(false, new StringPretty("Warning with no marker")).build())
+                .withFile("my sources/100% naïve.zc", "let x = 0")
+                .withReport(new Report.Builder<StringPretty>(false, new StringPretty("Warning in a file whose name is not a valid URI"))
+                        .withMarker(new Position(1, 5, 1, 6, "my sources/100% naïve.zc"), new Marker.This<>(new StringPretty("Unused")))
+                        .build());
+
+        System.out.println("--- As JSON Lines ---");
+        diag.writeJsonLines(System.out);
+        System.out.println("--- As SARIF ---");
+        diag.writeSarif(System.out, "diagnose4j");
+    }
+
+    @Test
+    public void encodedDiagnostic() {
+        final Diagnostic<StringPretty> producer = new Diagnostic<StringPretty>()
+                .withFile("test.zc", files.get("test.zc"))
+                .withReport(new Report.Builder<StringPretty>(true, new StringPretty("Error sent to another process"))
+                        .withMarker(Position.fromOffsets(44, 53, "test.zc"), new Marker.This<>(new StringPretty("Infinite recursion")))
+                        .withMarker(new Position(1, 5, 1, 7, "test.zc"), new Marker.Maybe<>(new StringPretty("Maybe add a base case here")))
+                        .withHint(new StringPretty("Rendered by the receiving process"))
+                        .build());
+
+        final ByteBuffer bytes = producer.encode();
+        System.out.println("--- Encoded in " + bytes.remaining() + " bytes ---");
+        diag = Diagnostic.decode(bytes, StringPretty::new);
+    }
+
+    @Test
+    public void encodedDiagnosticRoundtrip() {
+        final Diagnostic<StringPretty> producer = new Diagnostic<StringPretty>()
+                .withFile("test.zc", files.get("test.zc"))
+                .withFile("long.zc", files.get("long.zc"))
+                .withReport(new Report.Builder<StringPretty>(true, new StringPretty("Error sent to another process"))
+                        .withMarker(Position.fromOffsets(44, 53, "test.zc"), new Marker.This<>(new StringPretty("Infinite recursion")))
+                        .withMarker(new Position(10, 5, 12, 7, "long.zc"), new Marker.Where<>(new StringPretty("Used here")))
+                        .withHint(new StringPretty("Rendered by the receiving process"))
+                        .build())
+                .withReport(new Report.Builder<StringPretty>(false, new StringPretty("Warning with no marker")).build());
+
+        final ByteBuffer bytes = producer.encode(1);
+        final byte[] encoded = new byte[bytes.remaining()];
+        bytes.duplicate().get(encoded);
+
+        final ByteBuffer reencoded = Diagnostic.decode(bytes, StringPretty::new).encode(1);
+        final byte[] roundtrip = new byte[reencoded.remaining()];
+        reencoded.get(roundtrip);
+        assertArrayEquals(encoded, roundtrip);
+        // decoding keeps everything the encoding holds, and nothing else
+
+        for (int length = 0; length < encoded.length; ++length) {
+            final ByteBuffer truncated = ByteBuffer.wrap(Arrays.copyOf(encoded, length));
+            assertThrows(IllegalArgumentException.class, () -> Diagnostic.decode(truncated, StringPretty::new));
+        }
+    }
+
+    @Test
+    public void limitedReports() throws IOException {
+        for (int i = 0; i < 5; ++i) {
+            diag = diag
+                    .withReport(new Report.Builder<StringPretty>(true, new StringPretty("Error instantiated many times"))
+                            .withMarker(new Position(1, 25, 1, 30, "test.zc"), new Marker.This<>(new StringPretty("Same place every time")))
+                            .build())
+                    .withReport(new Report.Builder<StringPretty>(false, new StringPretty("Warning in a loop"))
+                            .withMarker(new Position(i + 1, 1, i + 1, 4, "long.zc"), new Marker.This<>(new StringPretty("Iteration " + i)))
+                            .build());
+        }
+
+        diag = diag.withLimits(ReportLimits.none()
+                .withDeduplication(true)
+                .withMaxReportsPerMessage(2));
+
+        assertEquals(Arrays.asList(
+                "[error]: Error instantiated many times",
+                "[warning]: Warning in a loop",
+                "[warning]: Warning in a loop",
+                "[note]: 7 reports were suppressed (4 duplicates, 3 over the limit per message)"
+        ), headers(printed(diag, RenderOptions.defaults().withColors(false))));
+    }
+
+    @Test
+    public void reportsOrderedByLocation() throws IOException {
+        diag = diag
+                .withReport(new Report.Builder<StringPretty>(true, new StringPretty("Error in the last line of test.zc"))
+                        .withMarker(new Position(3, 5, 3, 10, "test.zc"), new Marker.This<>(new StringPretty("Third")))
+                        .build())
+                .withReport(new Report.Builder<StringPretty>(false, new StringPretty("Warning with no location")).build())
+                .withReport(new Report.Builder<StringPretty>(true, new StringPretty("Error in long.zc"))
+                        .withMarker(new Position(2, 5, 2, 6, "long.zc"), new Marker.This<>(new StringPretty("First")))
+                        .build())
+                .withReport(new Report.Builder<StringPretty>(true, new StringPretty("Error in the first line of test.zc"))
+                        .withMarker(new Position(3, 1, 3, 4, "test.zc"), new Marker.Where<>(new StringPretty("Not the primary position")))
+                        .withMarker(Position.fromOffsets(4, 6, "test.zc"), new Marker.This<>(new StringPretty("Second")))
+                        .build())
+                .withReportOrder(ReportOrder.LOCATION);
+
+        assertEquals(Arrays.asList(
+                "[error]: Error in long.zc",
+                "[error]: Error in the first line of test.zc",
+                "[error]: Error in the last line of test.zc",
+                "[warning]: Warning with no location"
+        ), headers(printed(diag, RenderOptions.defaults().withColors(false))));
+        // files in alphabetical order, then positions in each file (offsets included), and reports without markers last
+    }
 }